@@ -0,0 +1,30 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+
+/**
+ * The policies for handling a message which is sent while all the connections
+ * to the RabbitMQ server have been blocked by the RabbitMQ server, because of
+ * a memory or disk alarm.
+ * @author Melior
+ * @since 2.3
+ */
+public enum BlockedPolicy {
+
+    /**
+     * Fail the send immediately.
+     */
+    FAIL,
+
+    /**
+     * Wait for a connection to be unblocked, for at most the request timeout.
+     */
+    WAIT
+
+}
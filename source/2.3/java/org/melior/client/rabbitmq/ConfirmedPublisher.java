@@ -0,0 +1,632 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.melior.context.transaction.TransactionContext;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * A Reactive Streams {@code Publisher} which publishes a stream of messages to a
+ * {@code Destination} with publisher confirms, and emits the result for each
+ * message once the RabbitMQ server has confirmed it.
+ * <p>
+ * Messages are only requested from the upstream publisher while the number of
+ * messages which have not been confirmed, or whose results have not been taken
+ * by the subscriber yet, is below the maximum number of unconfirmed messages.
+ * A stream of any length is therefore published at the pace of the RabbitMQ
+ * server, in constant memory.
+ * <p>
+ * Each subscription publishes on its own dedicated connection, outside the connection
+ * pool, because confirm mode cannot be turned off on a channel once it is selected.
+ * The connection is closed when the stream completes or the subscription is cancelled.
+ * @author Melior
+ * @since 2.3
+ * @see PublishResult
+ */
+public class ConfirmedPublisher<Rq> implements Publisher<PublishResult<Rq>> {
+
+    private RabbitMQClient client;
+
+    private Destination destination;
+
+    private Publisher<Rq> messages;
+
+    /**
+     * Constructor.
+     * @param client The RabbitMQ client
+     * @param destination The destination
+     * @param messages The publisher of the messages
+     */
+    ConfirmedPublisher(
+        final RabbitMQClient client,
+        final Destination destination,
+        final Publisher<Rq> messages) {
+
+        super();
+
+        this.client = client;
+
+        this.destination = destination;
+
+        this.messages = messages;
+    }
+
+    /**
+     * Subscribe to the results.  Publishing starts when the subscriber signals demand.
+     * @param subscriber The subscriber
+     */
+    public void subscribe(
+        final Subscriber<? super PublishResult<Rq>> subscriber) {
+
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must be provided.");
+        }
+
+        new Session(subscriber).start();
+    }
+
+    /**
+     * A message which has been published but not confirmed yet.
+     */
+    private class Pending {
+
+        private Rq message;
+
+        private PublishResult<Rq> result;
+
+        private List<PublishResult<Rq>> followers;
+
+        /**
+         * Constructor.
+         * @param message The message
+         */
+        Pending(
+            final Rq message) {
+
+            super();
+
+            this.message = message;
+        }
+
+        /**
+         * Add the result of a message which failed to publish after this message, so
+         * that it is emitted after the result of this message.
+         * @param follower The result of the message which failed to publish
+         */
+        void follow(
+            final PublishResult<Rq> follower) {
+
+            if (followers == null) {
+                followers = new ArrayList<PublishResult<Rq>>(1);
+            }
+
+            followers.add(follower);
+        }
+
+    }
+
+    /**
+     * Publishing session for a single subscriber.
+     */
+    private class Session implements Subscriber<Rq>, Subscription, ConfirmListener, ShutdownListener {
+
+        private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+        private Subscriber<? super PublishResult<Rq>> subscriber;
+
+        private Subscription upstream;
+
+        private org.springframework.amqp.rabbit.connection.Connection connection;
+
+        private Channel channel;
+
+        private TreeMap<Long, Pending> pending;
+
+        private Queue<PublishResult<Rq>> ready;
+
+        private long requested;
+
+        private long outstanding;
+
+        private boolean upstreamDone;
+
+        private Throwable error;
+
+        private boolean cancelled;
+
+        private AtomicInteger drains;
+
+        /**
+         * Constructor.
+         * @param subscriber The subscriber
+         */
+        Session(
+            final Subscriber<? super PublishResult<Rq>> subscriber) {
+
+            super();
+
+            this.subscriber = subscriber;
+
+            pending = new TreeMap<Long, Pending>();
+
+            ready = new ArrayDeque<PublishResult<Rq>>();
+
+            drains = new AtomicInteger();
+        }
+
+        /**
+         * Start session.  Opens a channel in confirm mode and subscribes to the messages.
+         */
+        void start() {
+
+            String methodName = "start";
+
+            subscriber.onSubscribe(this);
+
+            try {
+
+                synchronized (this) {
+
+                    connection = client.createConnection();
+                    channel = connection.createChannel(false);
+                    channel.confirmSelect();
+                    channel.addConfirmListener(this);
+                    channel.addShutdownListener(this);
+                }
+
+            }
+            catch (Throwable exception) {
+                logger.error(methodName, "Failed to open channel: ", exception.getMessage(), exception);
+
+                synchronized (this) {
+                    upstreamDone = true;
+                    error = exception;
+                }
+
+                drain();
+
+                return;
+            }
+
+            messages.subscribe(this);
+        }
+
+        /**
+         * Handle upstream subscription.
+         * @param subscription The upstream subscription
+         */
+        public void onSubscribe(
+            final Subscription subscription) {
+
+            synchronized (this) {
+
+                if ((upstream != null) || (cancelled == true)) {
+                    subscription.cancel();
+
+                    return;
+                }
+
+                upstream = subscription;
+            }
+
+            drain();
+        }
+
+        /**
+         * Publish message.
+         * @param message The message
+         */
+        public void onNext(
+            final Rq message) {
+
+            String payload;
+            TransactionContext transactionContext;
+            Map<String, Object> headers;
+            String routingKey;
+            AMQP.BasicProperties properties;
+            Long sequenceNumber = null;
+            PublishResult<Rq> failed;
+            Pending entry;
+
+            try {
+
+                payload = client.serialize(message);
+
+                transactionContext = TransactionContext.get();
+
+                headers = new HashMap<String, Object>(4);
+                TraceHeaders.inject(headers, (transactionContext == null) ? null : transactionContext.getTransactionId());
+                routingKey = destination.getRoutingKey(message, headers);
+
+                properties = new AMQP.BasicProperties.Builder()
+                    .contentType("text/plain")
+                    .contentEncoding("UTF-8")
+                    .deliveryMode(2)
+                    .priority(destination.getPriority())
+                    .correlationId((transactionContext == null) ? null : transactionContext.getTransactionId())
+                    .headers(headers)
+                    .build();
+
+                synchronized (this) {
+
+                    if (channel == null) {
+                        throw new IllegalStateException("Channel has been released.");
+                    }
+
+                    sequenceNumber = channel.getNextPublishSeqNo();
+                    pending.put(sequenceNumber, new Pending(message));
+
+                    channel.basicPublish(destination.getExchange(), routingKey, properties,
+                        payload.getBytes(StandardCharsets.UTF_8));
+                }
+
+            }
+            catch (Exception exception) {
+
+                synchronized (this) {
+
+                    failed = new PublishResult<Rq>(message, false, exception.getMessage());
+
+                    entry = (sequenceNumber == null) ? null : pending.get(sequenceNumber);
+
+                    if (entry != null) {
+                        entry.result = failed;
+                    }
+                    else if (pending.isEmpty() == false) {
+                        pending.lastEntry().getValue().follow(failed);
+                    }
+                    else {
+                        ready.add(failed);
+                    }
+
+                    promote();
+                }
+
+            }
+
+            drain();
+        }
+
+        /**
+         * Handle upstream error.  The error is signalled to the subscriber once the
+         * results of all the messages that were published have been emitted.
+         * @param throwable The error
+         */
+        public void onError(
+            final Throwable throwable) {
+
+            synchronized (this) {
+                upstreamDone = true;
+                error = throwable;
+            }
+
+            drain();
+        }
+
+        /**
+         * Handle upstream completion.
+         */
+        public void onComplete() {
+
+            synchronized (this) {
+                upstreamDone = true;
+            }
+
+            drain();
+        }
+
+        /**
+         * Request more results.
+         * @param n The number of results
+         */
+        public void request(
+            final long n) {
+
+            Subscription subscription = null;
+
+            synchronized (this) {
+
+                if (n <= 0) {
+                    upstreamDone = true;
+                    error = new IllegalArgumentException("Number of results requested must be positive.");
+                    subscription = upstream;
+                }
+                else {
+                    requested = (requested + n < 0) ? Long.MAX_VALUE : requested + n;
+                }
+
+            }
+
+            if (subscription != null) {
+                subscription.cancel();
+            }
+
+            drain();
+        }
+
+        /**
+         * Cancel subscription.  Cancels the upstream subscription and releases the connection.
+         */
+        public void cancel() {
+
+            Subscription subscription;
+
+            synchronized (this) {
+
+                if (cancelled == true) {
+                    return;
+                }
+
+                cancelled = true;
+                subscription = upstream;
+            }
+
+            if (subscription != null) {
+                subscription.cancel();
+            }
+
+            release();
+        }
+
+        /**
+         * Handle confirmation of messages.
+         * @param deliveryTag The delivery tag
+         * @param multiple true if all messages up to the delivery tag are confirmed, false otherwise
+         */
+        public void handleAck(
+            final long deliveryTag,
+            final boolean multiple) {
+
+            confirm(deliveryTag, multiple, true);
+        }
+
+        /**
+         * Handle rejection of messages.
+         * @param deliveryTag The delivery tag
+         * @param multiple true if all messages up to the delivery tag are rejected, false otherwise
+         */
+        public void handleNack(
+            final long deliveryTag,
+            final boolean multiple) {
+
+            confirm(deliveryTag, multiple, false);
+        }
+
+        /**
+         * Handle shutdown of the channel.  Messages which have not been confirmed yet
+         * are reported as failed, and the upstream subscription is cancelled.
+         * @param cause The cause of the shutdown
+         */
+        public void shutdownCompleted(
+            final ShutdownSignalException cause) {
+
+            Subscription subscription;
+
+            synchronized (this) {
+
+                for (Pending entry : pending.values()) {
+
+                    if (entry.result == null) {
+                        entry.result = new PublishResult<Rq>(entry.message, false, cause.getMessage());
+                    }
+
+                }
+
+                promote();
+
+                subscription = (upstreamDone == true) ? null : upstream;
+
+                upstreamDone = true;
+                error = (error == null) ? cause : error;
+            }
+
+            if (subscription != null) {
+                subscription.cancel();
+            }
+
+            drain();
+        }
+
+        /**
+         * Record confirmation of messages, and make the results of the messages at the
+         * head of the stream ready for the subscriber.  A message whose result has already
+         * been recorded, because it failed to publish, keeps that result.
+         * @param deliveryTag The delivery tag
+         * @param multiple true if all messages up to the delivery tag are affected, false otherwise
+         * @param success true if the messages were confirmed, false if they were rejected
+         */
+        private void confirm(
+            final long deliveryTag,
+            final boolean multiple,
+            final boolean success) {
+
+            synchronized (this) {
+
+                for (Pending entry : (multiple == true) ? pending.headMap(deliveryTag, true).values() : pending.subMap(deliveryTag, true, deliveryTag, true).values()) {
+
+                    if (entry.result == null) {
+                        entry.result = new PublishResult<Rq>(entry.message, success, (success == true) ? null : "Message was rejected by the RabbitMQ server.");
+                    }
+
+                }
+
+                promote();
+            }
+
+            drain();
+        }
+
+        /**
+         * Make the results of the messages at the head of the stream ready for the subscriber,
+         * followed by the results of any messages which failed to publish after them.  Must be
+         * invoked while holding the lock on the session.
+         */
+        private void promote() {
+
+            Map.Entry<Long, Pending> head;
+            Pending entry;
+
+            while (((head = pending.firstEntry()) != null) && (head.getValue().result != null)) {
+                entry = pending.pollFirstEntry().getValue();
+
+                ready.add(entry.result);
+
+                if (entry.followers != null) {
+                    ready.addAll(entry.followers);
+                }
+
+            }
+
+        }
+
+        /**
+         * Emit ready results to the subscriber as far as demand allows, request more messages
+         * from upstream as far as the window allows, and terminate the subscription once all
+         * results have been emitted.  Only one thread emits at a time, so signals to the
+         * subscriber are serialized.
+         */
+        private void drain() {
+
+            int missed;
+            PublishResult<Rq> result;
+            long credit;
+            Subscription subscription;
+            boolean isTerminated;
+            Throwable terminalError;
+
+            if (drains.getAndIncrement() != 0) {
+                return;
+            }
+
+            missed = 1;
+
+            do {
+
+                while (true) {
+
+                    synchronized (this) {
+
+                        if ((cancelled == true) || (requested == 0) || (ready.isEmpty() == true)) {
+                            break;
+                        }
+
+                        result = ready.poll();
+
+                        if (requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+
+                        outstanding--;
+                    }
+
+                    subscriber.onNext(result);
+                }
+
+                synchronized (this) {
+
+                    credit = 0;
+                    subscription = upstream;
+                    isTerminated = false;
+                    terminalError = error;
+
+                    if (cancelled == false) {
+
+                        if ((upstreamDone == true) && (pending.isEmpty() == true) && (ready.isEmpty() == true)) {
+                            cancelled = true;
+                            isTerminated = true;
+                        }
+                        else if ((upstreamDone == false) && (subscription != null)) {
+                            credit = Math.min(client.getMaximumUnconfirmed(), requested) - outstanding;
+                            credit = Math.max(0, credit);
+                            outstanding += credit;
+                        }
+
+                    }
+
+                }
+
+                if (isTerminated == true) {
+
+                    release();
+
+                    if (terminalError != null) {
+                        subscriber.onError(terminalError);
+                    }
+                    else {
+                        subscriber.onComplete();
+                    }
+
+                }
+                else if (credit > 0) {
+                    subscription.request(credit);
+                }
+
+                missed = drains.addAndGet(-missed);
+            }
+            while (missed != 0);
+
+        }
+
+        /**
+         * Release the channel and close the connection.
+         */
+        private void release() {
+
+            String methodName = "release";
+            org.springframework.amqp.rabbit.connection.Connection connection;
+            Channel channel;
+
+            synchronized (this) {
+
+                connection = this.connection;
+                channel = this.channel;
+
+                this.connection = null;
+                this.channel = null;
+            }
+
+            if (connection == null) {
+                return;
+            }
+
+            try {
+
+                channel.removeConfirmListener(this);
+                channel.removeShutdownListener(this);
+            }
+            catch (Exception exception) {
+                logger.warn(methodName, "Failed to remove confirm listener: ", exception.getMessage());
+            }
+            finally {
+
+                connection.close();
+            }
+
+        }
+
+    }
+
+}
@@ -25,21 +25,27 @@ public class Connection extends org.melior.client.core.Connection<RabbitMQClient
 
     private Channel channel;
 
+    private ConnectionStatistics statistics;
+
     /**
      * Constructor.
      * @param configuration The client configuration
      * @param connectionPool The connection pool
      * @param connectionFactory The RabbitMQ connection factory
+     * @param statistics The statistics of the connection pool
      * @throws RemotingException if an error occurs during the construction
      */
     public Connection(
         final RabbitMQClientConfig configuration,
         final ConnectionPool<RabbitMQClientConfig, Connection, org.springframework.amqp.rabbit.connection.Connection> connectionPool,
-        final RabbitMQConnectionFactory connectionFactory) throws RemotingException {
+        final RabbitMQConnectionFactory connectionFactory,
+        final ConnectionStatistics statistics) throws RemotingException {
 
         super(configuration, connectionPool);
 
         this.connectionFactory = connectionFactory;
+
+        this.statistics = statistics;
     }
 
     /**
@@ -60,7 +66,15 @@ public class Connection extends org.melior.client.core.Connection<RabbitMQClient
     protected void closeConnection(
         final org.springframework.amqp.rabbit.connection.Connection connection) throws Exception {
 
-        connection.close();
+        try {
+
+            connection.close();
+        }
+        finally {
+
+            connectionFactory.connectionClosed(connection);
+        }
+
     }
 
     /**
@@ -94,6 +108,8 @@ public class Connection extends org.melior.client.core.Connection<RabbitMQClient
 
         else if (methodName.equals("close") == true) {
 
+            statistics.checkedIn();
+
             releaseConnection(this);
 
             invocationResult = null;
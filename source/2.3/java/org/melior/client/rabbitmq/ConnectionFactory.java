@@ -7,17 +7,42 @@
         Service Harness
 */
 package org.melior.client.rabbitmq;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.melior.client.exception.RemotingException;
 import org.melior.client.pool.ConnectionPool;
+import org.melior.service.exception.ExceptionType;
+import org.springframework.amqp.AmqpException;
+import org.springframework.util.StringUtils;
+import com.rabbitmq.client.Address;
 
 /**
  * Implements a factory for persistent RabbitMQ {@code Connection} objects.
+ * <p>
+ * If the client is configured with the addresses of the nodes in a RabbitMQ
+ * cluster, then new connections are spread across the nodes according to
+ * the configured {@code LoadBalancing} strategy.  If a node cannot be reached,
+ * then the connection is opened to the next node instead.
+ * <p>
+ * A factory may prefer one node, such as the node which leads a queue.  New
+ * connections are then opened to the preferred node, and only fall back to
+ * the other nodes in the cluster when the preferred node cannot be reached.
  * @author Melior
  * @since 2.3
  */
 public class ConnectionFactory implements org.melior.client.core.ConnectionFactory<RabbitMQClientConfig, Connection, org.springframework.amqp.rabbit.connection.Connection> {
 
-    private RabbitMQConnectionFactory connectionFactory;
+    private List<RabbitMQConnectionFactory> connectionFactories;
+
+    private LoadBalancing loadBalancing;
+
+    private AtomicInteger nextNode;
+
+    private int preferredNode;
+
+    private ConnectionStatistics statistics;
 
     /**
      * Constructor.
@@ -28,14 +53,184 @@ public class ConnectionFactory implements org.melior.client.core.ConnectionFacto
         final boolean async,
         final RabbitMQClientConfig configuration) {
 
+        this(async, configuration, null);
+    }
+
+    /**
+     * Constructor.  Prefers the node with the given host name, and falls back to the
+     * other nodes if the preferred node cannot be reached.
+     * @param async The asynchronous transport indicator
+     * @param configuration The client configuration
+     * @param host The host name of the preferred node, or null to spread connections across all nodes
+     */
+    public ConnectionFactory(
+        final boolean async,
+        final RabbitMQClientConfig configuration,
+        final String host) {
+
         super();
 
+        connectionFactories = new ArrayList<RabbitMQConnectionFactory>();
+
+        preferredNode = -1;
+
+        if (StringUtils.hasLength(configuration.getAddresses()) == false) {
+
+            connectionFactories.add(newConnectionFactory(configuration, null));
+        }
+        else {
+
+            for (Address address : Address.parseAddresses(configuration.getAddresses())) {
+
+                if ((preferredNode < 0) && (host != null) && (host.equalsIgnoreCase(address.getHost()) == true)) {
+                    preferredNode = connectionFactories.size();
+                }
+
+                connectionFactories.add(newConnectionFactory(configuration, address));
+
+            }
+
+        }
+
+        connectionFactories = Collections.unmodifiableList(connectionFactories);
+
+        loadBalancing = configuration.getLoadBalancing();
+
+        nextNode = new AtomicInteger();
+
+        statistics = new ConnectionStatistics(this);
+    }
+
+    /**
+     * Create raw connection factory for node.
+     * @param configuration The client configuration
+     * @param address The address of the node, or null to use the address in the URL
+     * @return The raw connection factory
+     */
+    private static RabbitMQConnectionFactory newConnectionFactory(
+        final RabbitMQClientConfig configuration,
+        final Address address) {
+
+        RabbitMQConnectionFactory connectionFactory;
+
         connectionFactory = new RabbitMQConnectionFactory();
-        connectionFactory.setUri(configuration.getUrl());
+
+        if (StringUtils.hasLength(configuration.getUrl()) == true) {
+            connectionFactory.setUri(configuration.getUrl());
+        }
+
+        if (address != null) {
+            connectionFactory.setHost(address.getHost());
+            connectionFactory.setPort((address.getPort() < 0) ? connectionFactory.getPort() : address.getPort());
+        }
+
         connectionFactory.setUsername(configuration.getUsername());
         connectionFactory.setPassword(configuration.getPassword());
         connectionFactory.setCloseTimeout(configuration.getConnectionTimeout());
         connectionFactory.setConnectionTimeout(configuration.getConnectionTimeout());
+
+        return connectionFactory;
+    }
+
+    /**
+     * Get raw connection factories, one for each node.
+     * @return The raw connection factories
+     */
+    public List<RabbitMQConnectionFactory> getConnectionFactories() {
+        return connectionFactories;
+    }
+
+    /**
+     * Get statistics for the connections opened by the factory.
+     * @return The connection statistics
+     */
+    public ConnectionStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Check whether connection has been blocked by the RabbitMQ server.
+     * @param connection The raw connection
+     * @return true if the connection is blocked, false otherwise
+     */
+    public boolean isBlocked(
+        final com.rabbitmq.client.Connection connection) {
+
+        for (RabbitMQConnectionFactory connectionFactory : connectionFactories) {
+
+            if (connectionFactory.isBlocked(connection) == true) {
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    /**
+     * Get number of open connections across all nodes.
+     * @return The number of open connections
+     */
+    public int getOpenConnections() {
+
+        int openConnections = 0;
+
+        for (RabbitMQConnectionFactory connectionFactory : connectionFactories) {
+            openConnections += connectionFactory.getOpenConnections();
+        }
+
+        return openConnections;
+    }
+
+    /**
+     * Get number of blocked connections across all nodes.
+     * @return The number of blocked connections
+     */
+    public int getBlockedConnections() {
+
+        int blockedConnections = 0;
+
+        for (RabbitMQConnectionFactory connectionFactory : connectionFactories) {
+            blockedConnections += connectionFactory.getBlockedConnections();
+        }
+
+        return blockedConnections;
+    }
+
+    /**
+     * Select the node to open the next connection to.  The preferred node is selected if there is one.
+     * @return The index of the node
+     */
+    private int selectNode() {
+
+        int node;
+        int openConnections;
+
+        if (preferredNode >= 0) {
+
+            node = preferredNode;
+        }
+        else if (loadBalancing == LoadBalancing.LEAST_CONNECTIONS) {
+
+            node = 0;
+            openConnections = Integer.MAX_VALUE;
+
+            for (int i = 0; i < connectionFactories.size(); i++) {
+
+                if (connectionFactories.get(i).getOpenConnections() < openConnections) {
+                    node = i;
+                    openConnections = connectionFactories.get(node).getOpenConnections();
+                }
+
+            }
+
+        }
+        else {
+
+            node = Math.floorMod(nextNode.getAndIncrement(), connectionFactories.size());
+        }
+
+        return node;
     }
 
     /**
@@ -49,14 +244,77 @@ public class ConnectionFactory implements org.melior.client.core.ConnectionFacto
         final RabbitMQClientConfig configuration,
         final ConnectionPool<RabbitMQClientConfig, Connection, org.springframework.amqp.rabbit.connection.Connection> connectionPool) throws RemotingException {
 
+        int node;
         Connection connection;
+        RemotingException lastException;
 
-        connection = new Connection(configuration, connectionPool, connectionFactory);
-        connection.open();
+        if (connectionFactories.isEmpty() == true) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "No RabbitMQ nodes are configured.");
+        }
 
-        return connection;
+        node = selectNode();
+        lastException = null;
+
+        for (int i = 0; i < connectionFactories.size(); i++) {
+
+            try {
+
+                connection = new Connection(configuration, connectionPool, connectionFactories.get((node + i) % connectionFactories.size()), statistics);
+                connection.open();
+
+                statistics.opened(connection);
+
+                return connection;
+            }
+            catch (RemotingException exception) {
+
+                statistics.openFailed();
+
+                lastException = exception;
+            }
+
+        }
+
+        throw lastException;
     }
 
+    /**
+     * Create a dedicated connection, which is not pooled.  The connection is opened to
+     * the preferred node, or the node which is selected by the load balancing strategy,
+     * or to the next node if that node cannot be reached.
+     * @return The dedicated connection
+     * @throws AmqpException if unable to open a connection to any node
+     */
+    public org.springframework.amqp.rabbit.connection.Connection createDedicatedConnection() throws AmqpException {
+
+        int node;
+        RabbitMQConnectionFactory connectionFactory;
+        AmqpException lastException;
+
+        if (connectionFactories.isEmpty() == true) {
+            throw new AmqpException("No RabbitMQ nodes are configured.");
+        }
+
+        node = selectNode();
+        lastException = null;
+
+        for (int i = 0; i < connectionFactories.size(); i++) {
+
+            connectionFactory = connectionFactories.get((node + i) % connectionFactories.size());
+
+            try {
+
+                return new DedicatedConnection(connectionFactory, connectionFactory.createConnection());
+            }
+            catch (AmqpException exception) {
+                lastException = exception;
+            }
+
+        }
+
+        throw lastException;
+    }
+
     /**
      * Destroy the connection.
      * @param connection The connection
@@ -64,6 +322,8 @@ public class ConnectionFactory implements org.melior.client.core.ConnectionFacto
     public void destroyConnection(
         final Connection connection) {
 
+        statistics.closed(connection);
+
         connection.close();
     }
 
@@ -0,0 +1,396 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.melior.util.thread.DaemonThread;
+import org.melior.util.thread.ThreadControl;
+import org.springframework.amqp.AmqpException;
+import com.rabbitmq.client.BlockedListener;
+
+/**
+ * Leases publisher connections to threads.  Each publishing thread keeps the
+ * connection, and therefore the channel, that it borrowed from the pool for its
+ * first send, and reuses it for subsequent sends without returning it to the
+ * pool in between.  This removes the contention on the pool from the hot path
+ * when many threads publish concurrently.
+ * <p>
+ * A lease is returned to the pool when it has been idle for longer than the idle
+ * timeout, when the thread which holds it has terminated, or when its connection
+ * has been closed or blocked.  The leased connections are borrowed from the pool,
+ * so the maximum number of connections of the pool still applies.
+ * <p>
+ * The number of leases is capped below the maximum number of connections of the pool,
+ * so that leases never exhaust the pool.  The cap is read from the configuration on every
+ * new lease, so a change in the maximum number of connections applies to the next lease.
+ * When the cap is lowered, the surplus leases are returned to the pool as they become
+ * idle or are taken over.  When the cap has been reached, a thread which
+ * needs a lease takes over the connection of an idle lease of another thread, rather
+ * than waiting for the idle lease to time out.  The reaper of idle leases stops when
+ * there are no leases left, and starts again with the next lease.
+ * @author Melior
+ * @since 2.3
+ */
+class ConnectionLeases {
+
+    private static final int IDLE = 0;
+
+    private static final int IN_USE = 1;
+
+    private static final int RETIRED = 2;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private Supplier<org.springframework.amqp.rabbit.connection.Connection> pool;
+
+    private ConnectionFactory connectionFactory;
+
+    private RabbitMQClientConfig configuration;
+
+    private long idleTimeout;
+
+    private long acquireTimeout;
+
+    private AtomicInteger permits;
+
+    private ThreadLocal<Lease> leases;
+
+    private Set<Lease> activeLeases;
+
+    private volatile boolean isReaping;
+
+    /**
+     * Constructor.
+     * @param pool The supplier of connections from the pool
+     * @param connectionFactory The connection factory
+     * @param configuration The client configuration
+     * @param idleTimeout The amount of time after which an idle lease is returned to the pool, in milliseconds
+     * @param acquireTimeout The amount of time to wait for a lease when all leases are in use, in milliseconds
+     */
+    ConnectionLeases(
+        final Supplier<org.springframework.amqp.rabbit.connection.Connection> pool,
+        final ConnectionFactory connectionFactory,
+        final RabbitMQClientConfig configuration,
+        final long idleTimeout,
+        final long acquireTimeout) {
+
+        super();
+
+        this.pool = pool;
+
+        this.connectionFactory = connectionFactory;
+
+        this.configuration = configuration;
+
+        this.idleTimeout = Math.max(1, idleTimeout);
+
+        this.acquireTimeout = acquireTimeout;
+
+        permits = new AtomicInteger(0);
+
+        leases = new ThreadLocal<Lease>();
+
+        activeLeases = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Get connection leased to the current thread.  If the thread does not hold a usable
+     * lease, then a connection is borrowed from the pool and leased to the thread, or the
+     * connection of an idle lease of another thread is taken over if the cap on the number
+     * of leases has been reached.
+     * @return The connection
+     * @throws AmqpException if unable to borrow a connection from the pool
+     */
+    org.springframework.amqp.rabbit.connection.Connection acquire() throws AmqpException {
+
+        Lease lease;
+        org.springframework.amqp.rabbit.connection.Connection connection;
+        long deadline;
+
+        lease = leases.get();
+
+        if ((lease != null) && (lease.state.compareAndSet(IDLE, IN_USE) == true)) {
+
+            if ((lease.connection.isOpen() == true)
+                && (connectionFactory.isBlocked(lease.connection.getDelegate()) == false)) {
+                return lease;
+            }
+
+            lease.state.set(RETIRED);
+            release(lease);
+        }
+
+        connection = null;
+        deadline = System.currentTimeMillis() + acquireTimeout;
+
+        while (acquirePermit() == false) {
+
+            connection = takeOver();
+
+            if (connection != null) {
+                break;
+            }
+
+            if (System.currentTimeMillis() >= deadline) {
+                throw new AmqpException("All leased connections are in use.");
+            }
+
+            ThreadControl.wait(this, 1, TimeUnit.MILLISECONDS);
+        }
+
+        if (connection == null) {
+
+            try {
+
+                connection = pool.get();
+            }
+            catch (RuntimeException exception) {
+
+                permits.decrementAndGet();
+
+                throw exception;
+            }
+
+        }
+
+        lease = new Lease(connection);
+
+        leases.set(lease);
+        activeLeases.add(lease);
+
+        startReaping();
+
+        return lease;
+    }
+
+    /**
+     * Get number of active leases.
+     * @return The number of active leases
+     */
+    int getActiveLeases() {
+        return activeLeases.size();
+    }
+
+    /**
+     * Acquire permit for a new lease, if the number of leases is below the cap.  The cap
+     * is one less than the current maximum number of connections of the pool.
+     * @return true if the permit has been acquired, false otherwise
+     */
+    private boolean acquirePermit() {
+
+        int leased;
+
+        while (true) {
+
+            leased = permits.get();
+
+            if (leased >= Math.max(1, configuration.getMaximumConnections() - 1)) {
+                return false;
+            }
+
+            if (permits.compareAndSet(leased, leased + 1) == true) {
+                return true;
+            }
+
+        }
+
+    }
+
+    /**
+     * Take over the connection of an idle lease of another thread.  The idle lease is
+     * retired, and its permit passes to the lease which takes over its connection.
+     * @return The connection, or null if there is no idle lease with a usable connection
+     */
+    private org.springframework.amqp.rabbit.connection.Connection takeOver() {
+
+        for (Lease lease : activeLeases) {
+
+            if (lease.state.compareAndSet(IDLE, RETIRED) == false) {
+                continue;
+            }
+
+            if ((lease.connection.isOpen() == true)
+                && (connectionFactory.isBlocked(lease.connection.getDelegate()) == false)) {
+
+                activeLeases.remove(lease);
+
+                return lease.connection;
+            }
+
+            release(lease);
+        }
+
+        return null;
+    }
+
+    /**
+     * Return leased connection to the pool.
+     * @param lease The lease
+     */
+    private void release(
+        final Lease lease) {
+
+        String methodName = "release";
+
+        if (activeLeases.remove(lease) == true) {
+            permits.decrementAndGet();
+        }
+
+        try {
+
+            lease.connection.close();
+        }
+        catch (Exception exception) {
+            logger.warn(methodName, "Failed to release leased connection: ", exception.getMessage());
+        }
+
+    }
+
+    /**
+     * Start reaping idle leases and leases held by terminated threads, if not started already.
+     */
+    private void startReaping() {
+
+        if (isReaping == true) {
+            return;
+        }
+
+        synchronized (this) {
+
+            if (isReaping == true) {
+                return;
+            }
+
+            isReaping = true;
+
+            DaemonThread.create(() -> reap());
+        }
+
+    }
+
+    /**
+     * Reap idle leases and leases held by terminated threads.  Reaping stops when
+     * there are no leases left.
+     */
+    private void reap() {
+
+        long now;
+
+        while (true) {
+
+            synchronized (this) {
+
+                if (activeLeases.isEmpty() == true) {
+                    isReaping = false;
+
+                    return;
+                }
+
+            }
+
+            ThreadControl.wait(this, Math.max(100, idleTimeout / 2), TimeUnit.MILLISECONDS);
+
+            now = System.currentTimeMillis();
+
+            for (Lease lease : activeLeases) {
+
+                if (((lease.thread.isAlive() == false) || (now - lease.lastUsed > idleTimeout))
+                    && (lease.state.compareAndSet(IDLE, RETIRED) == true)) {
+                    release(lease);
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * A connection which is leased to a thread.  Closing the connection
+     * keeps the lease, ready for the next send by the same thread.
+     */
+    private class Lease implements org.springframework.amqp.rabbit.connection.Connection {
+
+        private org.springframework.amqp.rabbit.connection.Connection connection;
+
+        private Thread thread;
+
+        private AtomicInteger state;
+
+        private volatile long lastUsed;
+
+        /**
+         * Constructor.
+         * @param connection The connection borrowed from the pool
+         */
+        Lease(
+            final org.springframework.amqp.rabbit.connection.Connection connection) {
+
+            super();
+
+            this.connection = connection;
+
+            thread = Thread.currentThread();
+
+            state = new AtomicInteger(IN_USE);
+
+            lastUsed = System.currentTimeMillis();
+        }
+
+        public com.rabbitmq.client.Channel createChannel(
+            final boolean transactional) throws AmqpException {
+            return connection.createChannel(transactional);
+        }
+
+        public void close() throws AmqpException {
+
+            lastUsed = System.currentTimeMillis();
+
+            if (connection.isOpen() == false) {
+
+                if (state.compareAndSet(IN_USE, RETIRED) == true) {
+                    release(this);
+                }
+
+                return;
+            }
+
+            state.compareAndSet(IN_USE, IDLE);
+        }
+
+        public boolean isOpen() {
+            return connection.isOpen();
+        }
+
+        public int getLocalPort() {
+            return connection.getLocalPort();
+        }
+
+        public void addBlockedListener(
+            final BlockedListener listener) {
+            connection.addBlockedListener(listener);
+        }
+
+        public boolean removeBlockedListener(
+            final BlockedListener listener) {
+            return connection.removeBlockedListener(listener);
+        }
+
+        public com.rabbitmq.client.Connection getDelegate() {
+            return connection.getDelegate();
+        }
+
+    }
+
+}
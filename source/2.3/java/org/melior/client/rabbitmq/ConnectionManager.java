@@ -7,17 +7,43 @@
         Service Harness
 */
 package org.melior.client.rabbitmq;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.melior.util.number.Counter;
+import org.melior.util.thread.ThreadControl;
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.rabbit.connection.ConnectionListener;
 
 /**
  * Implements a manager for persistent RabbitMQ {@code Connection} objects, for connections to
  * RabbitMQ servers. The manager writes statistics from the underlying connection pool to
- * the logs whenever a {@code Connection} is borrowed from the pool.
+ * the logs whenever a {@code Connection} is borrowed from the pool, and keeps
+ * {@code ConnectionStatistics} for the occupancy of the pool, the time taken to borrow
+ * a connection, and the age and churn of the connections.
+ * <p>
+ * Connections for publishing are obtained from the publisher connection factory
+ * of the manager, which skips connections that have been blocked by the RabbitMQ
+ * server.  If all connections are blocked, then the configured {@code BlockedPolicy}
+ * determines whether the send fails immediately or waits for a connection to be
+ * unblocked.
+ * <p>
+ * If channel affinity is enabled, then each publishing thread keeps a leased
+ * connection, and its channel, between sends instead of returning it to the pool.
  * @author Melior
  * @since 2.3
  */
 public class ConnectionManager extends org.melior.client.pool.ConnectionManager<RabbitMQClientConfig, Connection, org.springframework.amqp.rabbit.connection.Connection> implements org.springframework.amqp.rabbit.connection.ConnectionFactory {
+
+    private RabbitMQClientConfig configuration;
+
+    private ConnectionFactory connectionFactory;
+
+    private PublisherConnectionFactory publisherConnectionFactory;
+
+    private Counter blockedMessages;
+
+    private ConnectionLeases connectionLeases;
 
     /**
      * Constructor.
@@ -29,6 +55,17 @@ public class ConnectionManager extends org.melior.client.pool.ConnectionManager<
         final ConnectionFactory connectionFactory) {
 
         super(configuration, connectionFactory);
+
+        this.configuration = configuration;
+
+        this.connectionFactory = connectionFactory;
+
+        publisherConnectionFactory = new PublisherConnectionFactory();
+
+        blockedMessages = Counter.of(0);
+
+        connectionLeases = new ConnectionLeases(() -> createPublisherConnection(), connectionFactory,
+            configuration, configuration.getChannelIdleTimeout(), configuration.getRequestTimeout());
     }
 
     /**
@@ -38,42 +75,245 @@ public class ConnectionManager extends org.melior.client.pool.ConnectionManager<
      */
     public org.springframework.amqp.rabbit.connection.Connection createConnection() throws AmqpException {
 
+        long start;
+        org.springframework.amqp.rabbit.connection.Connection connection;
+
+        start = System.nanoTime();
+
         try {
 
-            return getConnection();
+            connection = getConnection();
         }
         catch (Exception exception) {
+
+            connectionFactory.getStatistics().checkoutFailed();
+
             throw new AmqpException(exception.getMessage());
         }
 
+        connectionFactory.getStatistics().checkedOut(System.nanoTime() - start);
+
+        return connection;
     }
 
+    /**
+     * Get host name of the first node that the manager connects to.
+     * @return The host name
+     */
     public String getHost() {
-        return null;
+        return getNodeFactory().getHost();
     }
 
+    /**
+     * Get port of the first node that the manager connects to.
+     * @return The port
+     */
     public int getPort() {
-        return 0;
+        return getNodeFactory().getPort();
     }
 
+    /**
+     * Get virtual host.
+     * @return The virtual host
+     */
     public String getVirtualHost() {
-        return null;
+        return getNodeFactory().getVirtualHost();
     }
 
+    /**
+     * Get user name.
+     * @return The user name
+     */
     public String getUsername() {
-        return null;
+        return getNodeFactory().getUsername();
+    }
+
+    /**
+     * Get raw connection factory of the first node that the manager connects to.
+     * @return The raw connection factory
+     */
+    private RabbitMQConnectionFactory getNodeFactory() {
+        return connectionFactory.getConnectionFactories().get(0);
+    }
+
+    /**
+     * Get statistics for the connection pool.
+     * @return The connection statistics
+     */
+    public ConnectionStatistics getStatistics() {
+        return connectionFactory.getStatistics();
     }
 
     public void addConnectionListener(
         final ConnectionListener listener) {
+
+        for (RabbitMQConnectionFactory factory : connectionFactory.getConnectionFactories()) {
+            factory.addConnectionListener(listener);
+        }
+
     }
 
     public boolean removeConnectionListener(
         final ConnectionListener listener) {
-        return false;
+
+        boolean isRemoved = false;
+
+        for (RabbitMQConnectionFactory factory : connectionFactory.getConnectionFactories()) {
+            isRemoved = factory.removeConnectionListener(listener) || isRemoved;
+        }
+
+        return isRemoved;
     }
 
     public void clearConnectionListeners() {
+
+        for (RabbitMQConnectionFactory factory : connectionFactory.getConnectionFactories()) {
+            factory.clearConnectionListeners();
+        }
+
     }
 
+    /**
+     * Get publisher connection factory.
+     * @return The publisher connection factory
+     */
+    public org.springframework.amqp.rabbit.connection.ConnectionFactory getPublisherConnectionFactory() {
+        return publisherConnectionFactory;
+    }
+
+    /**
+     * Create a dedicated connection, which is not pooled, to one of the nodes that the
+     * manager connects to.  The connection is for users which change the state of their
+     * channel, or which hold deliveries on it, and must be closed by the user.
+     * @return The dedicated connection
+     * @throws AmqpException if unable to create a connection
+     */
+    public org.springframework.amqp.rabbit.connection.Connection createDedicatedConnection() throws AmqpException {
+        return connectionFactory.createDedicatedConnection();
+    }
+
+    /**
+     * Get number of messages which could not be sent because all connections were blocked.
+     * @return The number of messages
+     */
+    public Counter getBlockedMessages() {
+        return blockedMessages;
+    }
+
+    /**
+     * Get number of publisher connections which are leased to threads.
+     * @return The number of leased connections
+     */
+    public int getLeasedConnections() {
+        return connectionLeases.getActiveLeases();
+    }
+
+    /**
+     * Create connection for publishing.  Connections which have been blocked by the
+     * RabbitMQ server are skipped.  Each blocked connection is held until the search ends,
+     * so that the pool hands out a different connection every time, and the blocked
+     * connections are then returned to the pool.  The search checks at most as many
+     * connections as are open.  If all connections are blocked,
+     * then the send either fails immediately or waits for a connection to be unblocked,
+     * depending on the blocked policy.
+     * @return The connection
+     * @throws AmqpException if unable to create a connection
+     */
+    private org.springframework.amqp.rabbit.connection.Connection createPublisherConnection() throws AmqpException {
+
+        long deadline;
+        List<org.springframework.amqp.rabbit.connection.Connection> held;
+        org.springframework.amqp.rabbit.connection.Connection connection;
+
+        deadline = System.currentTimeMillis() + configuration.getRequestTimeout();
+
+        while (true) {
+
+            if (connectionFactory.getBlockedConnections() == 0) {
+                return createConnection();
+            }
+
+            held = new ArrayList<org.springframework.amqp.rabbit.connection.Connection>();
+
+            try {
+
+                for (int i = 0; i < Math.max(1, connectionFactory.getOpenConnections()); i++) {
+
+                    connection = createConnection();
+
+                    if (connectionFactory.isBlocked(connection.getDelegate()) == false) {
+                        return connection;
+                    }
+
+                    held.add(connection);
+                }
+
+            }
+            finally {
+
+                for (org.springframework.amqp.rabbit.connection.Connection blockedConnection : held) {
+                    blockedConnection.close();
+                }
+
+            }
+
+            if ((configuration.getBlockedPolicy() == BlockedPolicy.FAIL)
+                || (System.currentTimeMillis() >= deadline)) {
+
+                blockedMessages.increment();
+
+                throw new AmqpException("All connections to the RabbitMQ server are blocked.");
+            }
+
+            ThreadControl.wait(this, 10, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+    /**
+     * A view of the connection manager which provides connections for publishing.
+     */
+    private class PublisherConnectionFactory implements org.springframework.amqp.rabbit.connection.ConnectionFactory {
+
+        /**
+         * Create connection.
+         * @return The connection
+         * @throws AmqpException if unable to create a connection
+         */
+        public org.springframework.amqp.rabbit.connection.Connection createConnection() throws AmqpException {
+            return (configuration.isChannelAffinity() == true) ? connectionLeases.acquire() : createPublisherConnection();
+        }
+
+        public String getHost() {
+            return ConnectionManager.this.getHost();
+        }
+
+        public int getPort() {
+            return ConnectionManager.this.getPort();
+        }
+
+        public String getVirtualHost() {
+            return ConnectionManager.this.getVirtualHost();
+        }
+
+        public String getUsername() {
+            return ConnectionManager.this.getUsername();
+        }
+
+        public void addConnectionListener(
+            final ConnectionListener listener) {
+            ConnectionManager.this.addConnectionListener(listener);
+        }
+
+        public boolean removeConnectionListener(
+            final ConnectionListener listener) {
+            return ConnectionManager.this.removeConnectionListener(listener);
+        }
+
+        public void clearConnectionListeners() {
+            ConnectionManager.this.clearConnectionListeners();
+        }
+
+    }
+
 }
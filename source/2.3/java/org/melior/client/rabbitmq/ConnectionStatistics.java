@@ -0,0 +1,351 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects statistics for the connection pool of a {@code ConnectionManager}.  The
+ * statistics show how many connections are open and how many are in use, how long
+ * it takes to borrow a connection from the pool, how long connections live, and
+ * how often connections are opened and closed.
+ * <p>
+ * The time taken to borrow a connection is recorded in a histogram with buckets
+ * whose bounds are powers of two microseconds, which allows percentiles to be
+ * estimated without retaining the individual samples.
+ * @author Melior
+ * @since 2.3
+ */
+public class ConnectionStatistics {
+
+    private static final int BUCKETS = 40;
+
+    private ConnectionFactory connectionFactory;
+
+    private AtomicInteger busyConnections;
+
+    private AtomicLong checkouts;
+
+    private AtomicLong checkoutFailures;
+
+    private AtomicLong checkoutTime;
+
+    private AtomicLong maximumCheckoutTime;
+
+    private AtomicLongArray checkoutHistogram;
+
+    private AtomicLong createdConnections;
+
+    private AtomicLong creationFailures;
+
+    private AtomicLong closedConnections;
+
+    private AtomicLong closedLifetime;
+
+    private Map<Connection, Long> openTimes;
+
+    /**
+     * Constructor.
+     * @param connectionFactory The connection factory
+     */
+    ConnectionStatistics(
+        final ConnectionFactory connectionFactory) {
+
+        super();
+
+        this.connectionFactory = connectionFactory;
+
+        busyConnections = new AtomicInteger();
+        checkouts = new AtomicLong();
+        checkoutFailures = new AtomicLong();
+        checkoutTime = new AtomicLong();
+        maximumCheckoutTime = new AtomicLong();
+        checkoutHistogram = new AtomicLongArray(BUCKETS);
+        createdConnections = new AtomicLong();
+        creationFailures = new AtomicLong();
+        closedConnections = new AtomicLong();
+        closedLifetime = new AtomicLong();
+
+        openTimes = new ConcurrentHashMap<Connection, Long>();
+    }
+
+    /**
+     * Record that a connection has been borrowed from the pool.
+     * @param duration The time taken to borrow the connection, in nanoseconds
+     */
+    void checkedOut(
+        final long duration) {
+
+        long micros;
+
+        micros = TimeUnit.NANOSECONDS.toMicros(duration);
+
+        checkouts.incrementAndGet();
+        checkoutTime.addAndGet(micros);
+        maximumCheckoutTime.accumulateAndGet(micros, Math::max);
+        checkoutHistogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+
+        busyConnections.incrementAndGet();
+    }
+
+    /**
+     * Record that a connection could not be borrowed from the pool.
+     */
+    void checkoutFailed() {
+        checkoutFailures.incrementAndGet();
+    }
+
+    /**
+     * Record that a connection has been returned to the pool.
+     */
+    void checkedIn() {
+        busyConnections.decrementAndGet();
+    }
+
+    /**
+     * Record that a connection has been opened.
+     * @param connection The connection
+     */
+    void opened(
+        final Connection connection) {
+
+        createdConnections.incrementAndGet();
+
+        openTimes.put(connection, System.currentTimeMillis());
+    }
+
+    /**
+     * Record that a connection could not be opened.
+     */
+    void openFailed() {
+        creationFailures.incrementAndGet();
+    }
+
+    /**
+     * Record that a connection has been closed.
+     * @param connection The connection
+     */
+    void closed(
+        final Connection connection) {
+
+        Long openTime;
+
+        openTime = openTimes.remove(connection);
+
+        if (openTime == null) {
+            return;
+        }
+
+        closedConnections.incrementAndGet();
+        closedLifetime.addAndGet(System.currentTimeMillis() - openTime);
+    }
+
+    /**
+     * Get number of open connections.
+     * @return The number of open connections
+     */
+    public int getOpenConnections() {
+        return openTimes.size();
+    }
+
+    /**
+     * Get number of connections which have been borrowed from the pool and not returned yet.
+     * @return The number of busy connections
+     */
+    public int getBusyConnections() {
+        return busyConnections.get();
+    }
+
+    /**
+     * Get number of open connections which are waiting in the pool to be borrowed.
+     * @return The number of idle connections
+     */
+    public int getIdleConnections() {
+        return Math.max(0, getOpenConnections() - getBusyConnections());
+    }
+
+    /**
+     * Get number of open connections which have been blocked by the RabbitMQ server.
+     * @return The number of blocked connections
+     */
+    public int getBlockedConnections() {
+        return connectionFactory.getBlockedConnections();
+    }
+
+    /**
+     * Get number of times that a connection has been borrowed from the pool.
+     * @return The number of checkouts
+     */
+    public long getCheckouts() {
+        return checkouts.get();
+    }
+
+    /**
+     * Get number of times that a connection could not be borrowed from the pool.
+     * @return The number of failed checkouts
+     */
+    public long getCheckoutFailures() {
+        return checkoutFailures.get();
+    }
+
+    /**
+     * Get average time taken to borrow a connection from the pool.
+     * @return The average checkout time, in microseconds
+     */
+    public long getAverageCheckoutTime() {
+        return (checkouts.get() == 0) ? 0 : checkoutTime.get() / checkouts.get();
+    }
+
+    /**
+     * Get longest time taken to borrow a connection from the pool.
+     * @return The maximum checkout time, in microseconds
+     */
+    public long getMaximumCheckoutTime() {
+        return maximumCheckoutTime.get();
+    }
+
+    /**
+     * Get estimate of a percentile of the time taken to borrow a connection from the pool.
+     * The estimate is the upper bound of the histogram bucket which contains the percentile.
+     * @param percentile The percentile, from 0 to 100
+     * @return The checkout time, in microseconds
+     */
+    public long getCheckoutTimePercentile(
+        final double percentile) {
+
+        long[] histogram;
+        long total;
+        long threshold;
+        long count;
+
+        histogram = getCheckoutHistogram();
+
+        total = 0;
+
+        for (long bucket : histogram) {
+            total += bucket;
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        threshold = (long) Math.ceil(total * Math.max(0, Math.min(100, percentile)) / 100);
+        count = 0;
+
+        for (int i = 0; i < histogram.length; i++) {
+            count += histogram[i];
+
+            if ((count >= threshold) && (count > 0)) {
+                return (i == 0) ? 0 : Math.min(1L << i, maximumCheckoutTime.get());
+            }
+
+        }
+
+        return maximumCheckoutTime.get();
+    }
+
+    /**
+     * Get histogram of the time taken to borrow a connection from the pool.  Bucket 0 counts
+     * checkouts which took less than a microsecond, and bucket {@code i} counts checkouts
+     * which took at least 2<sup>i-1</sup> and less than 2<sup>i</sup> microseconds.
+     * @return The histogram
+     */
+    public long[] getCheckoutHistogram() {
+
+        long[] histogram;
+
+        histogram = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = checkoutHistogram.get(i);
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Get number of connections which have been opened.
+     * @return The number of connections opened
+     */
+    public long getCreatedConnections() {
+        return createdConnections.get();
+    }
+
+    /**
+     * Get number of times that a connection could not be opened.
+     * @return The number of failed connection attempts
+     */
+    public long getCreationFailures() {
+        return creationFailures.get();
+    }
+
+    /**
+     * Get number of connections which have been closed, because of an error, or because
+     * they were pruned as surplus or reached their maximum lifetime.
+     * @return The number of connections closed
+     */
+    public long getClosedConnections() {
+        return closedConnections.get();
+    }
+
+    /**
+     * Get average lifetime of the connections which have been closed.
+     * @return The average lifetime, in milliseconds
+     */
+    public long getAverageLifetime() {
+        return (closedConnections.get() == 0) ? 0 : closedLifetime.get() / closedConnections.get();
+    }
+
+    /**
+     * Get age of the oldest open connection.
+     * @return The age, in milliseconds
+     */
+    public long getOldestConnectionAge() {
+
+        long now;
+        long age;
+
+        now = System.currentTimeMillis();
+        age = 0;
+
+        for (Long openTime : openTimes.values()) {
+            age = Math.max(age, now - openTime);
+        }
+
+        return age;
+    }
+
+    /**
+     * Get average age of the open connections.
+     * @return The age, in milliseconds
+     */
+    public long getAverageConnectionAge() {
+
+        long now;
+        long age;
+        int count;
+
+        now = System.currentTimeMillis();
+        age = 0;
+        count = 0;
+
+        for (Long openTime : openTimes.values()) {
+            age += now - openTime;
+            count++;
+        }
+
+        return (count == 0) ? 0 : age / count;
+    }
+
+}
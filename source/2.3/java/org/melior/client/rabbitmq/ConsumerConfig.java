@@ -0,0 +1,68 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+
+/**
+ * The configuration of the consumer connection pool of a {@code RabbitMQClient}.
+ * The pool is sized and timed by the consumer-specific parameters of the client
+ * where they are configured, and by the general parameters of the client otherwise.
+ * @author Melior
+ * @since 2.3
+ */
+class ConsumerConfig extends RabbitMQClientConfig {
+
+    private RabbitMQClientConfig clientConfig;
+
+    /**
+     * Constructor.
+     * @param clientConfig The client configuration
+     */
+    ConsumerConfig(
+        final RabbitMQClientConfig clientConfig) {
+
+        super();
+
+        configure(clientConfig);
+
+        this.clientConfig = clientConfig;
+    }
+
+    /**
+     * Get minimum number of connections.
+     * @return The minimum number of connections
+     */
+    public int getMinimumConnections() {
+        return (clientConfig.getConsumerMinimumConnections() < 0) ? clientConfig.getMinimumConnections() : clientConfig.getConsumerMinimumConnections();
+    }
+
+    /**
+     * Get maximum number of connections.
+     * @return The maximum number of connections
+     */
+    public int getMaximumConnections() {
+        return (clientConfig.getConsumerMaximumConnections() < 0) ? clientConfig.getMaximumConnections() : clientConfig.getConsumerMaximumConnections();
+    }
+
+    /**
+     * Get connection timeout.
+     * @return The connection timeout, in milliseconds
+     */
+    public int getConnectionTimeout() {
+        return (clientConfig.getConsumerConnectionTimeout() < 0) ? clientConfig.getConnectionTimeout() : clientConfig.getConsumerConnectionTimeout();
+    }
+
+    /**
+     * Get inactivity timeout.
+     * @return The inactivity timeout, in milliseconds
+     */
+    public int getInactivityTimeout() {
+        return (clientConfig.getConsumerInactivityTimeout() < 0) ? clientConfig.getInactivityTimeout() : clientConfig.getConsumerInactivityTimeout();
+    }
+
+}
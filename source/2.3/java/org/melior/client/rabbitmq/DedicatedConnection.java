@@ -0,0 +1,128 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import org.springframework.amqp.AmqpException;
+import com.rabbitmq.client.BlockedListener;
+
+/**
+ * Implements a RabbitMQ {@code Connection} which is dedicated to a single user, and which
+ * is not returned to a connection pool.  Unlike a pooled connection, the channels that are
+ * created on a dedicated connection are real channels, and the state which is applied to
+ * them, such as a prefetch count or confirm mode, is discarded when they are closed.
+ * Closing the connection closes its channels, which requeues any deliveries that have not
+ * been acknowledged yet.
+ * @author Melior
+ * @since 2.3
+ */
+class DedicatedConnection implements org.springframework.amqp.rabbit.connection.Connection {
+
+    private RabbitMQConnectionFactory connectionFactory;
+
+    private org.springframework.amqp.rabbit.connection.Connection delegate;
+
+    private boolean closed;
+
+    /**
+     * Constructor.
+     * @param connectionFactory The RabbitMQ connection factory which opened the connection
+     * @param delegate The raw connection
+     */
+    DedicatedConnection(
+        final RabbitMQConnectionFactory connectionFactory,
+        final org.springframework.amqp.rabbit.connection.Connection delegate) {
+
+        super();
+
+        this.connectionFactory = connectionFactory;
+
+        this.delegate = delegate;
+    }
+
+    /**
+     * Create channel.
+     * @param transactional true if the channel is transactional, false otherwise
+     * @return The channel
+     * @throws AmqpException if unable to create the channel
+     */
+    public com.rabbitmq.client.Channel createChannel(
+        final boolean transactional) throws AmqpException {
+
+        return delegate.createChannel(transactional);
+    }
+
+    /**
+     * Close connection, and notify the RabbitMQ connection factory that it has been closed.
+     * @throws AmqpException if unable to close the connection
+     */
+    public void close() throws AmqpException {
+
+        synchronized (this) {
+
+            if (closed == true) {
+                return;
+            }
+
+            closed = true;
+        }
+
+        try {
+
+            delegate.close();
+        }
+        finally {
+
+            connectionFactory.connectionClosed(delegate);
+        }
+
+    }
+
+    /**
+     * Check whether connection is open.
+     * @return true if the connection is open, false otherwise
+     */
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    /**
+     * Get local port of connection.
+     * @return The local port
+     */
+    public int getLocalPort() {
+        return delegate.getLocalPort();
+    }
+
+    /**
+     * Add blocked listener to connection.
+     * @param listener The blocked listener
+     */
+    public void addBlockedListener(
+        final BlockedListener listener) {
+        delegate.addBlockedListener(listener);
+    }
+
+    /**
+     * Remove blocked listener from connection.
+     * @param listener The blocked listener
+     * @return true if the listener was removed, false otherwise
+     */
+    public boolean removeBlockedListener(
+        final BlockedListener listener) {
+        return delegate.removeBlockedListener(listener);
+    }
+
+    /**
+     * Get raw connection delegate.
+     * @return The raw connection delegate
+     */
+    public com.rabbitmq.client.Connection getDelegate() {
+        return delegate.getDelegate();
+    }
+
+}
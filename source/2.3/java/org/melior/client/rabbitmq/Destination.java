@@ -0,0 +1,216 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.melior.client.exception.RemotingException;
+import org.melior.util.number.Clamp;
+import org.reactivestreams.Publisher;
+
+/**
+ * A handle to a destination in the RabbitMQ server, which consists of an exchange
+ * and a routing key.  The exchange and routing key are resolved once, when the
+ * destination is obtained from the {@code RabbitMQClient}, so that messages can
+ * be sent to the destination without any further lookups.
+ * <p>
+ * The default destination of a client which is configured with a routing key
+ * template derives the routing key of each message from the fields of the message.
+ * <p>
+ * All destinations that are obtained from a {@code RabbitMQClient} share the
+ * connection pool of that client.
+ * @author Melior
+ * @since 2.3
+ * @see RabbitMQClient
+ */
+public class Destination {
+
+    private RabbitMQClient client;
+
+    private String exchange;
+
+    private String routingKey;
+
+    private Integer priority;
+
+    private RoutingKeyTemplate template;
+
+    private volatile AtomicReferenceArray<Destination> priorities;
+
+    /**
+     * Constructor.
+     * @param client The RabbitMQ client
+     * @param exchange The exchange, or null for the default exchange
+     * @param routingKey The routing key
+     */
+    Destination(
+        final RabbitMQClient client,
+        final String exchange,
+        final String routingKey) {
+
+        this(client, exchange, routingKey, null, null);
+    }
+
+    /**
+     * Constructor.
+     * @param client The RabbitMQ client
+     * @param exchange The exchange, or null for the default exchange
+     * @param routingKey The routing key
+     * @param priority The message priority, or null if messages have no priority
+     * @param template The routing key template, or null if the routing key is fixed
+     */
+    Destination(
+        final RabbitMQClient client,
+        final String exchange,
+        final String routingKey,
+        final Integer priority,
+        final RoutingKeyTemplate template) {
+
+        super();
+
+        this.client = client;
+
+        this.exchange = (exchange == null) ? "" : exchange;
+
+        this.routingKey = routingKey;
+
+        this.priority = priority;
+
+        this.template = template;
+    }
+
+    /**
+     * Get destination which sends messages with the given priority.  The messages
+     * are only delivered in priority order if the queue has been declared with the
+     * {@code x-max-priority} argument.  The destination is created once for each
+     * priority level, and is cached for reuse.
+     * @param priority The message priority, from 0 to 255
+     * @return The destination
+     */
+    public Destination priority(
+        final int priority) {
+
+        int level;
+        AtomicReferenceArray<Destination> priorities;
+        Destination destination;
+
+        level = Clamp.clampInt(priority, 0, 255);
+
+        priorities = this.priorities;
+
+        if (priorities == null) {
+
+            synchronized (this) {
+
+                if (this.priorities == null) {
+                    this.priorities = new AtomicReferenceArray<Destination>(256);
+                }
+
+                priorities = this.priorities;
+            }
+
+        }
+
+        destination = priorities.get(level);
+
+        if (destination == null) {
+            priorities.compareAndSet(level, null, new Destination(client, exchange, routingKey, level, template));
+
+            destination = priorities.get(level);
+        }
+
+        return destination;
+    }
+
+    /**
+     * Send message.
+     * @param <Rq> The request type
+     * @param message The message object
+     * @throws RemotingException if unable to send the message
+     */
+    public <Rq> void send(
+        final Rq message) throws RemotingException {
+
+        client.send(this, message, Void.class);
+    }
+
+    /**
+     * Send message and receive response.
+     * @param <Rq> The request type
+     * @param <Rs> The response type
+     * @param message The message object
+     * @param responseType The response object type
+     * @return The response object
+     * @throws RemotingException if unable to send the message
+     */
+    public <Rq, Rs> Rs send(
+        final Rq message,
+        final Class<Rs> responseType) throws RemotingException {
+
+        return client.send(this, message, responseType);
+    }
+
+    /**
+     * Publish stream of messages with publisher confirms.
+     * @param <Rq> The request type
+     * @param messages The publisher of the messages
+     * @return The publisher of the results
+     */
+    public <Rq> ConfirmedPublisher<Rq> publish(
+        final Publisher<Rq> messages) {
+
+        return new ConfirmedPublisher<Rq>(client, this, messages);
+    }
+
+    /**
+     * Get exchange.
+     * @return The exchange
+     */
+    public String getExchange() {
+        return exchange;
+    }
+
+    /**
+     * Get routing key.
+     * @return The routing key
+     */
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * Get priority.
+     * @return The message priority, or null if messages have no priority
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    /**
+     * Get routing key for message.  The routing key is derived from the fields of
+     * the message if the destination has a routing key template.
+     * @param message The message object
+     * @param headers The message headers to add the fields of the routing key to, or null
+     * @return The routing key
+     * @throws IllegalArgumentException if unable to derive the routing key from the message
+     */
+    String getRoutingKey(
+        final Object message,
+        final Map<String, Object> headers) throws IllegalArgumentException {
+        return ((template == null) || (message instanceof String)) ? routingKey : template.resolve(message, headers);
+    }
+
+    /**
+     * Check whether destination has a routing key template.
+     * @return true if the destination has a routing key template, false otherwise
+     */
+    boolean isTemplated() {
+        return template != null;
+    }
+
+}
@@ -0,0 +1,29 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+
+/**
+ * The strategies with which new connections are spread across the
+ * nodes of a RabbitMQ cluster.
+ * @author Melior
+ * @since 2.3
+ */
+public enum LoadBalancing {
+
+    /**
+     * Open each new connection to the next node in the address list.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Open each new connection to the node with the fewest open connections.
+     */
+    LEAST_CONNECTIONS
+
+}
@@ -7,6 +7,7 @@
         Service Harness
 */
 package org.melior.client.rabbitmq;
+import java.util.Map;
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.Message;
 
@@ -16,13 +17,24 @@ import org.springframework.amqp.core.Message;
  * <p>
  * This implementation sets the correlation id in the message properties
  * to the transaction identifier from the transaction context, to allow
- * a transaction to be traced to the RabbitMQ server.
+ * a transaction to be traced to the RabbitMQ server.  If a priority is
+ * provided, then the priority in the message properties is set too.
+ * <p>
+ * The transaction identifier and the W3C trace context are also added
+ * to the message headers, to allow the consumer of the message to
+ * continue the same transaction and trace, along with any headers that
+ * were derived from the message by a routing key template.
  * @author Melior
  * @since 2.3
+ * @see TraceHeaders
  */
 public class MessagePostProcessor implements org.springframework.amqp.core.MessagePostProcessor {
 
     private String correlationId;
+
+    private Integer priority;
+
+    private Map<String, Object> headers;
 
     /**
      * Constructor.
@@ -31,9 +43,39 @@ public class MessagePostProcessor implements org.springframework.amqp.core.Messa
     public MessagePostProcessor(
         final String correlationId) {
 
+        this(correlationId, null);
+    }
+
+    /**
+     * Constructor.
+     * @param correlationId The correlation identifier
+     * @param priority The message priority, or null if the message has no priority
+     */
+    public MessagePostProcessor(
+        final String correlationId,
+        final Integer priority) {
+
+        this(correlationId, priority, null);
+    }
+
+    /**
+     * Constructor.
+     * @param correlationId The correlation identifier
+     * @param priority The message priority, or null if the message has no priority
+     * @param headers The additional message headers, or null if there are none
+     */
+    public MessagePostProcessor(
+        final String correlationId,
+        final Integer priority,
+        final Map<String, Object> headers) {
+
         super();
 
         this.correlationId = correlationId;
+
+        this.priority = priority;
+
+        this.headers = headers;
     }
 
     /**
@@ -47,6 +89,16 @@ public class MessagePostProcessor implements org.springframework.amqp.core.Messa
 
         message.getMessageProperties().setCorrelationId(correlationId);
 
+        TraceHeaders.inject(message.getMessageProperties().getHeaders(), correlationId);
+
+        if (headers != null) {
+            message.getMessageProperties().getHeaders().putAll(headers);
+        }
+
+        if (priority != null) {
+            message.getMessageProperties().setPriority(priority);
+        }
+
         return message;
     }
 
@@ -0,0 +1,71 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+
+/**
+ * The result of publishing a message through a {@code ConfirmedPublisher}.
+ * A message has been published successfully if the RabbitMQ server
+ * confirmed it.
+ * @author Melior
+ * @since 2.3
+ * @see ConfirmedPublisher
+ */
+public class PublishResult<Rq> {
+
+    private Rq message;
+
+    private boolean success;
+
+    private String reason;
+
+    /**
+     * Constructor.
+     * @param message The message
+     * @param success true if the message was confirmed, false otherwise
+     * @param reason The reason for the failure, if any
+     */
+    PublishResult(
+        final Rq message,
+        final boolean success,
+        final String reason) {
+
+        super();
+
+        this.message = message;
+
+        this.success = success;
+
+        this.reason = reason;
+    }
+
+    /**
+     * Get message.
+     * @return The message
+     */
+    public Rq getMessage() {
+        return message;
+    }
+
+    /**
+     * Check whether message was published successfully.
+     * @return true if the message was confirmed by the RabbitMQ server, false otherwise
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * Get reason for failure.
+     * @return The reason for the failure, or null if the message was published successfully
+     */
+    public String getReason() {
+        return reason;
+    }
+
+}
@@ -0,0 +1,195 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Locates the node in a RabbitMQ cluster which leads a queue, using the
+ * RabbitMQ management API.  The leader of a quorum queue is reported in
+ * the {@code leader} attribute of the queue, while the master of a classic
+ * queue is reported in the {@code node} attribute.
+ * <p>
+ * The node name, for example {@code rabbit@node1}, is matched against the
+ * host names in the configured address list, to allow consumers to connect
+ * directly to the node that leads the queue and avoid an internal cluster
+ * hop for every message.
+ * <p>
+ * The locator also reports the status of a queue, which includes the number
+ * of consumers and the consumer tag of the single active consumer.
+ * @author Melior
+ * @since 2.3
+ */
+public class QueueLocator {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private RabbitMQClientConfig configuration;
+
+    private ObjectMapper objectMapper;
+
+    /**
+     * Constructor.
+     * @param configuration The client configuration
+     */
+    public QueueLocator(
+        final RabbitMQClientConfig configuration) {
+
+        super();
+
+        this.configuration = configuration;
+
+        objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Locate the node which leads the queue.
+     * @param virtualHost The virtual host
+     * @param queueName The queue name
+     * @param hosts The host names of the nodes in the cluster
+     * @return The host name of the node which leads the queue, or null if the node could not be located
+     */
+    public String locate(
+        final String virtualHost,
+        final String queueName,
+        final List<String> hosts) {
+
+        String methodName = "locate";
+        String node;
+        String nodeHost;
+
+        try {
+
+            node = getNode(virtualHost, queueName);
+        }
+        catch (Exception exception) {
+            logger.warn(methodName, "Failed to locate queue [", queueName, "]: ", exception.getMessage());
+
+            return null;
+        }
+
+        if (node == null) {
+            return null;
+        }
+
+        nodeHost = (node.indexOf('@') < 0) ? node : node.substring(node.indexOf('@') + 1);
+
+        for (String host : hosts) {
+
+            if ((host.equalsIgnoreCase(nodeHost) == true)
+                || (host.toLowerCase().startsWith(nodeHost.toLowerCase() + ".") == true)
+                || (nodeHost.toLowerCase().startsWith(host.toLowerCase() + ".") == true)) {
+
+                logger.debug(methodName, "Queue [", queueName, "] is led by node [", node, "] at host [", host, "].");
+
+                return host;
+            }
+
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the status of the queue.
+     * @param virtualHost The virtual host
+     * @param queueName The queue name
+     * @return The status of the queue
+     * @throws Exception if unable to query the management API
+     */
+    public QueueStatus getStatus(
+        final String virtualHost,
+        final String queueName) throws Exception {
+
+        JsonNode queue;
+        JsonNode consumers;
+        JsonNode activeConsumerTag;
+
+        queue = getQueue(virtualHost, queueName);
+
+        consumers = queue.get("consumers");
+        activeConsumerTag = queue.get("single_active_consumer_tag");
+
+        return new QueueStatus((consumers == null) ? 0 : consumers.asInt(),
+            ((activeConsumerTag == null) || (activeConsumerTag.isNull() == true)) ? null : activeConsumerTag.asText());
+    }
+
+    /**
+     * Get the name of the node which leads the queue from the management API.
+     * @param virtualHost The virtual host
+     * @param queueName The queue name
+     * @return The node name, or null if the queue does not report a node
+     * @throws Exception if unable to query the management API
+     */
+    private String getNode(
+        final String virtualHost,
+        final String queueName) throws Exception {
+
+        JsonNode queue;
+        JsonNode node;
+
+        queue = getQueue(virtualHost, queueName);
+
+        node = queue.hasNonNull("leader") ? queue.get("leader") : queue.get("node");
+
+        return ((node == null) || (node.isNull() == true)) ? null : node.asText();
+    }
+
+    /**
+     * Get the attributes of the queue from the management API.
+     * @param virtualHost The virtual host
+     * @param queueName The queue name
+     * @return The attributes of the queue
+     * @throws Exception if unable to query the management API
+     */
+    private JsonNode getQueue(
+        final String virtualHost,
+        final String queueName) throws Exception {
+
+        HttpURLConnection connection;
+
+        connection = (HttpURLConnection) new URL(configuration.getManagementUrl().replaceAll("/+$", "") + "/api/queues/"
+            + URLEncoder.encode((virtualHost == null) ? "/" : virtualHost, "UTF-8").replace("+", "%20") + "/"
+            + URLEncoder.encode(queueName, "UTF-8").replace("+", "%20")).openConnection();
+
+        try {
+
+            connection.setConnectTimeout(configuration.getConnectionTimeout());
+            connection.setReadTimeout(configuration.getRequestTimeout());
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString(
+                (configuration.getUsername() + ":" + configuration.getPassword()).getBytes(StandardCharsets.UTF_8)));
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new Exception("Management API responded with status " + connection.getResponseCode() + ".");
+            }
+
+            try (InputStream inputStream = connection.getInputStream()) {
+
+                return objectMapper.readTree(inputStream);
+            }
+
+        }
+        finally {
+
+            connection.disconnect();
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+
+/**
+ * Status of a queue, as reported by the RabbitMQ management API.  The consumer
+ * tag of the active consumer is only reported for a queue which is declared with
+ * the {@code x-single-active-consumer} argument.
+ * @author Melior
+ * @since 2.3
+ */
+public class QueueStatus {
+
+    private int consumers;
+
+    private String activeConsumerTag;
+
+    /**
+     * Constructor.
+     * @param consumers The number of consumers
+     * @param activeConsumerTag The consumer tag of the single active consumer
+     */
+    QueueStatus(
+        final int consumers,
+        final String activeConsumerTag) {
+
+        super();
+
+        this.consumers = consumers;
+
+        this.activeConsumerTag = activeConsumerTag;
+    }
+
+    /**
+     * Get number of consumers.
+     * @return The number of consumers, including those which are waiting to become active
+     */
+    public int getConsumers() {
+        return consumers;
+    }
+
+    /**
+     * Get consumer tag of active consumer.
+     * @return The consumer tag of the single active consumer, or null if there is no active consumer
+     */
+    public String getActiveConsumerTag() {
+        return activeConsumerTag;
+    }
+
+}
@@ -7,6 +7,12 @@
         Service Harness
 */
 package org.melior.client.rabbitmq;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 import org.melior.client.exception.RemotingException;
@@ -14,10 +20,13 @@ import org.melior.context.transaction.TransactionContext;
 import org.melior.logging.core.Logger;
 import org.melior.logging.core.LoggerFactory;
 import org.melior.service.exception.ExceptionType;
+import org.melior.util.number.Counter;
 import org.melior.util.object.ObjectUtil;
 import org.melior.util.time.Timer;
+import org.reactivestreams.Publisher;
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.StringUtils;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,10 +39,31 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * to the RabbitMQ server.  The client automatically converts any exception that
  * occurs during communication with the RabbitMQ server into a standard
  * {@code RemotingException}.
+ * <p>
+ * If the client is configured with the addresses of the nodes in a RabbitMQ
+ * cluster, then the pooled connections are spread across the nodes.  If the
+ * client is also configured with the URL of the RabbitMQ management API, then
+ * consumers are connected to the node which leads the queue they consume from.
+ * <p>
+ * The client initializes itself lazily when the first message is sent, unless
+ * warm-up is enabled, in which case the connections, channels and object mapper
+ * are prepared when the client bean is initialized.
+ * <p>
+ * Besides the configured exchange and routing key, messages may be sent to any
+ * {@code Destination}.  All destinations share the connection pool of the client.
+ * <p>
+ * If the client is configured with a {@code Topology}, then the topology is
+ * declared when the client is warmed up or the first message is sent, and
+ * again after a connection to the RabbitMQ server has been lost.
  * @author Melior
  * @since 2.3
  */
-public class RabbitMQClient extends RabbitMQClientConfig {
+public class RabbitMQClient extends RabbitMQClientConfig implements InitializingBean {
+
+    /**
+     * Maximum number of destinations which are cached by exchange and routing key.
+     */
+    public static final int MAX_DESTINATIONS = 1024;
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -45,20 +75,42 @@ public class RabbitMQClient extends RabbitMQClientConfig {
 
     private ObjectMapper objectMapper;
 
+    private ConnectionFactory connectionFactory;
+
     private ConnectionManager connectionManager;
 
-    private RabbitTemplate rabbitMQTemplate;
+    private ConsumerConfig consumerConfig;
+
+    private ConnectionFactory consumerConnectionFactory;
+
+    private ConnectionManager consumerConnectionManager;
+
+    private QueueLocator queueLocator;
+
+    private Map<String, ConnectionManager> nodeConnectionManagers;
+
+    private TopologyManager topologyManager;
+
+    private volatile RabbitTemplate rabbitMQTemplate;
+
+    private Map<List<String>, Destination> destinations;
+
+    private Destination defaultDestination;
+
+    private Class<?>[] types;
 
     /**
      * Constructor.
      * @param async The asynchronous transport indicator
      * @param ssl The SSL indicator
      * @param sslContext The SSL context
+     * @param types The message types to prime the object mapper for
      */
     RabbitMQClient(
         final boolean async,
         final boolean ssl,
-        final SSLContext sslContext) {
+        final SSLContext sslContext,
+        final Class<?>... types) {
 
         super();
 
@@ -67,6 +119,8 @@ public class RabbitMQClient extends RabbitMQClientConfig {
         this.ssl = ssl;
 
         this.sslContext = sslContext;
+
+        this.types = types;
     }
 
     /**
@@ -82,45 +136,232 @@ public class RabbitMQClient extends RabbitMQClientConfig {
     }
 
     /**
-     * Initialize client.
+     * Initialize client.  The client is initialized once only, even if
+     * multiple threads attempt to initialize it concurrently.
      * @throws RemotingException if unable to initialize the client
      */
     private void initialize() throws RemotingException {
 
-        if (rabbitMQTemplate != null) {
+        RabbitTemplate rabbitMQTemplate;
+
+        if (this.rabbitMQTemplate != null) {
             return;
         }
 
-        if (StringUtils.hasLength(getUrl()) == false) {
-            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "URL must be configured.");
+        synchronized (this) {
+
+            if (this.rabbitMQTemplate != null) {
+                return;
+            }
+
+            if ((StringUtils.hasLength(getUrl()) == false)
+                && (StringUtils.hasLength(getAddresses()) == false)) {
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "URL or addresses must be configured.");
+            }
+
+            if (StringUtils.hasLength(getUsername()) == false) {
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "User name must be configured.");
+            }
+
+            if (StringUtils.hasLength(getPassword()) == false) {
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Password must be configured.");
+            }
+
+            objectMapper = new ObjectMapper();
+            objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+            connectionFactory = new ConnectionFactory(async, this);
+            connectionManager = new ConnectionManager(this, connectionFactory);
+
+            consumerConfig = new ConsumerConfig(this);
+            consumerConnectionFactory = new ConnectionFactory(async, consumerConfig);
+            consumerConnectionManager = new ConnectionManager(consumerConfig, consumerConnectionFactory);
+
+            queueLocator = new QueueLocator(this);
+            nodeConnectionManagers = new HashMap<String, ConnectionManager>();
+
+            topologyManager = new TopologyManager(connectionFactory);
+            connectionManager.addConnectionListener(topologyManager);
+            consumerConnectionManager.addConnectionListener(topologyManager);
+
+            rabbitMQTemplate = new RabbitTemplate();
+            rabbitMQTemplate.setExchange((getExchange() == null) ? rabbitMQTemplate.getExchange() : getExchange());
+            rabbitMQTemplate.setConnectionFactory(connectionManager);
+            rabbitMQTemplate.setUsePublisherConnection(true);
+            rabbitMQTemplate.setReceiveTimeout(getRequestTimeout());
+
+            destinations = new ConcurrentHashMap<List<String>, Destination>();
+
+            if (StringUtils.hasLength(getRoutingKeyTemplate()) == true) {
+
+                try {
+
+                    defaultDestination = new Destination(this, rabbitMQTemplate.getExchange(), ObjectUtil.coalesce(getRoutingKey(), getQueue(), ""),
+                        null, new RoutingKeyTemplate(getRoutingKeyTemplate()));
+                }
+                catch (IllegalArgumentException exception) {
+                    throw new RemotingException(ExceptionType.LOCAL_APPLICATION, exception.getMessage());
+                }
+
+            }
+            else if ((StringUtils.hasLength(getRoutingKey()) == true)
+                || (StringUtils.hasLength(getQueue()) == true)) {
+                defaultDestination = new Destination(this, rabbitMQTemplate.getExchange(), ObjectUtil.coalesce(getRoutingKey(), getQueue()));
+            }
+
+            this.rabbitMQTemplate = rabbitMQTemplate;
         }
 
-        if (StringUtils.hasLength(getUsername()) == false) {
-            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "User name must be configured.");
+    }
+
+    /**
+     * Initialize client after the configuration has been bound, and warm up the
+     * client if warm-up is enabled.  A failure to warm up the client is logged,
+     * but does not prevent the application from starting.
+     */
+    public void afterPropertiesSet() {
+
+        String methodName = "afterPropertiesSet";
+
+        if (isWarmUp() == false) {
+            return;
+        }
+
+        try {
+
+            warmUp();
+        }
+        catch (RemotingException exception) {
+            logger.warn(methodName, "Failed to warm up client: ", exception.getMessage());
+        }
+
+    }
+
+    /**
+     * Warm up client.  Opens the minimum number of connections, or at least one, along
+     * with their channels, verifies that the configured exchange and queue exist, and
+     * primes the object mapper for the registered message types, so that the first
+     * message that is sent does not pay for any of these.
+     * @throws RemotingException if unable to warm up the client
+     */
+    public void warmUp() throws RemotingException {
+
+        String methodName = "warmUp";
+        Timer timer;
+        List<org.springframework.amqp.rabbit.connection.Connection> connections;
+        org.springframework.amqp.rabbit.connection.Connection connection;
+
+        initialize();
+
+        timer = Timer.ofNanos().start();
+
+        connections = new ArrayList<org.springframework.amqp.rabbit.connection.Connection>();
+
+        try {
+
+            for (int i = 0; i < Math.max(1, getMinimumConnections()); i++) {
+
+                connection = connectionManager.createConnection();
+                connections.add(connection);
+                connection.createChannel(false);
+            }
+
+        }
+        catch (AmqpException exception) {
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to open connection: " + exception.getMessage(), exception);
         }
+        finally {
+
+            for (org.springframework.amqp.rabbit.connection.Connection openConnection : connections) {
+                openConnection.close();
+            }
 
-        if (StringUtils.hasLength(getPassword()) == false) {
-            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Password must be configured.");
         }
 
-        if ((StringUtils.hasLength(getRoutingKey()) == false)
+        declare(getTopology());
+
+        verifyTopology();
+
+        for (Class<?> type : types) {
+
+            if ((objectMapper.canSerialize(type) == false)
+                || (objectMapper.canDeserialize(objectMapper.constructType(type)) == false)) {
+                logger.warn(methodName, "Unable to prime object mapper for type [", type.getName(), "].");
+            }
+
+        }
+
+        logger.debug(methodName, "Client warmed up successfully.  Connections = ", connections.size(), ", Duration = ", timer.elapsedTime(TimeUnit.MILLISECONDS), " ms.");
+    }
+
+    /**
+     * Verify that the configured exchange and queue exist on the RabbitMQ server.  The
+     * verification uses a dedicated connection, because the RabbitMQ server closes the
+     * channel on which a passive declaration fails.
+     * @throws RemotingException if the exchange or queue does not exist
+     */
+    private void verifyTopology() throws RemotingException {
+
+        RabbitMQConnectionFactory nodeConnectionFactory;
+        org.springframework.amqp.rabbit.connection.Connection connection;
+        com.rabbitmq.client.Channel channel;
+
+        if ((StringUtils.hasLength(getExchange()) == false)
             && (StringUtils.hasLength(getQueue()) == false)) {
-            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Routing key or queue must be configured.");
+            return;
+        }
+
+        nodeConnectionFactory = connectionFactory.getConnectionFactories().get(0);
+
+        try {
+
+            connection = nodeConnectionFactory.createConnection();
+        }
+        catch (AmqpException exception) {
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to open connection: " + exception.getMessage(), exception);
+        }
+
+        try {
+
+            channel = connection.createChannel(false);
+
+            if (StringUtils.hasLength(getExchange()) == true) {
+                channel.exchangeDeclarePassive(getExchange());
+            }
+
+            if (StringUtils.hasLength(getQueue()) == true) {
+                channel.queueDeclarePassive(getQueue());
+            }
+
+        }
+        catch (Exception exception) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Failed to verify exchange and queue: " + exception.getMessage(), exception);
+        }
+        finally {
+
+            connection.close();
+            nodeConnectionFactory.connectionClosed(connection);
         }
 
-        objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
 
-        connectionManager = new ConnectionManager(this, new ConnectionFactory(async, this));
+    /**
+     * Declare topology on the RabbitMQ server, unless it has already been declared since
+     * a connection to the RabbitMQ server was last lost.  The exchanges and queues are
+     * declared in parallel, followed by the bindings in parallel.
+     * @param topology The topology
+     * @throws RemotingException if unable to declare the topology
+     */
+    public void declare(
+        final Topology topology) throws RemotingException {
+
+        initialize();
 
-        rabbitMQTemplate = new RabbitTemplate();
-        rabbitMQTemplate.setExchange((getExchange() == null) ? rabbitMQTemplate.getExchange() : getExchange());
-        rabbitMQTemplate.setConnectionFactory(connectionManager);
-        rabbitMQTemplate.setReceiveTimeout(getRequestTimeout());
+        topologyManager.declare(topology);
     }
 
     /**
-     * Get connection factory.
+     * Get connection factory for publishing.
      * @return The connection factory
      * @throws RemotingException if unable to get the connection factory
      */
@@ -130,7 +371,190 @@ public class RabbitMQClient extends RabbitMQClientConfig {
 
         return connectionManager;
     }
+
+    /**
+     * Get connection factory for consuming from queue.  Consumers use a separate connection
+     * pool from publishers, so that flow control which the RabbitMQ server applies to slow
+     * consumer connections does not stall publishing.  If the node which leads the queue
+     * can be located, then the connection factory connects to that node only.  Otherwise,
+     * the connection factory is the shared consumer one which spreads connections across
+     * all nodes.
+     * @param queueName The queue name
+     * @return The connection factory
+     * @throws RemotingException if unable to get the connection factory
+     */
+    public org.springframework.amqp.rabbit.connection.ConnectionFactory getConnectionFactory(
+        final String queueName) throws RemotingException {
+
+        return getConsumerConnectionManager(queueName);
+    }
+
+    /**
+     * Get connection manager for consuming from queue.
+     * @param queueName The queue name
+     * @return The connection manager
+     * @throws RemotingException if unable to get the connection manager
+     */
+    private ConnectionManager getConsumerConnectionManager(
+        final String queueName) throws RemotingException {
+
+        List<String> hosts;
+        String host;
+        ConnectionManager nodeConnectionManager;
+
+        initialize();
+
+        if ((StringUtils.hasLength(getManagementUrl()) == false)
+            || (connectionFactory.getConnectionFactories().size() < 2)) {
+            return consumerConnectionManager;
+        }
+
+        hosts = new ArrayList<String>();
+
+        for (RabbitMQConnectionFactory nodeConnectionFactory : connectionFactory.getConnectionFactories()) {
+            hosts.add(nodeConnectionFactory.getHost());
+        }
+
+        host = queueLocator.locate(connectionFactory.getConnectionFactories().get(0).getVirtualHost(), queueName, hosts);
+
+        if (host == null) {
+            return consumerConnectionManager;
+        }
+
+        synchronized (nodeConnectionManagers) {
+
+            nodeConnectionManager = nodeConnectionManagers.get(host);
+
+            if (nodeConnectionManager == null) {
+
+                nodeConnectionManager = new ConnectionManager(consumerConfig, new ConnectionFactory(async, consumerConfig, host));
+
+                nodeConnectionManagers.put(host, nodeConnectionManager);
+            }
+
+        }
+
+        return nodeConnectionManager;
+    }
+
+    /**
+     * Create a dedicated connection for publishing, which is not taken from the connection
+     * pool.  A dedicated connection allows the state of its channels, such as confirm mode,
+     * to be changed without affecting the pooled connections.  The caller must close the
+     * connection when it is no longer needed.
+     * @return The dedicated connection
+     * @throws RemotingException if unable to create the connection
+     */
+    public org.springframework.amqp.rabbit.connection.Connection createConnection() throws RemotingException {
+
+        initialize();
+
+        try {
+
+            return connectionManager.createDedicatedConnection();
+        }
+        catch (AmqpException exception) {
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to open connection: " + exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Create a dedicated connection for consuming from queue, which is not taken from the
+     * connection pool.  A dedicated connection allows the state of its channels, such as the
+     * prefetch count, to be changed without affecting the pooled connections, and closing it
+     * requeues the deliveries that have not been acknowledged.  The caller must close the
+     * connection when it is no longer needed.
+     * @param queueName The queue name
+     * @return The dedicated connection
+     * @throws RemotingException if unable to create the connection
+     */
+    public org.springframework.amqp.rabbit.connection.Connection createConnection(
+        final String queueName) throws RemotingException {
+
+        try {
+
+            return getConsumerConnectionManager(queueName).createDedicatedConnection();
+        }
+        catch (AmqpException exception) {
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to open connection: " + exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Get status of queue from the RabbitMQ management API.
+     * @param queueName The queue name
+     * @return The status of the queue
+     * @throws RemotingException if the management API is not configured, or if unable to query it
+     */
+    public QueueStatus getQueueStatus(
+        final String queueName) throws RemotingException {
+
+        initialize();
+
+        if (StringUtils.hasLength(getManagementUrl()) == false) {
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Management API is not configured.");
+        }
+
+        try {
+
+            return queueLocator.getStatus(connectionFactory.getConnectionFactories().get(0).getVirtualHost(), queueName);
+        }
+        catch (Exception exception) {
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to get status of queue: " + exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Get number of pooled connections which have been blocked by the RabbitMQ server.
+     * @return The number of blocked connections
+     * @throws RemotingException if unable to initialize the client
+     */
+    public int getBlockedConnections() throws RemotingException {
+
+        initialize();
+
+        return connectionFactory.getBlockedConnections();
+    }
+
+    /**
+     * Get number of messages which could not be sent because all connections were blocked.
+     * @return The number of messages
+     * @throws RemotingException if unable to initialize the client
+     */
+    public Counter getBlockedMessages() throws RemotingException {
+
+        initialize();
+
+        return connectionManager.getBlockedMessages();
+    }
 
+    /**
+     * Get statistics for the publisher connection pool of the client.
+     * @return The connection statistics
+     * @throws RemotingException if unable to initialize the client
+     */
+    public ConnectionStatistics getConnectionStatistics() throws RemotingException {
+
+        initialize();
+
+        return connectionManager.getStatistics();
+    }
+
+    /**
+     * Get statistics for the consumer connection pool of the client.
+     * @return The connection statistics
+     * @throws RemotingException if unable to initialize the client
+     */
+    public ConnectionStatistics getConsumerConnectionStatistics() throws RemotingException {
+
+        initialize();
+
+        return consumerConnectionManager.getStatistics();
+    }
+
     /**
      * Send message.
      * @param <Rq> The request type
@@ -156,8 +580,172 @@ public class RabbitMQClient extends RabbitMQClientConfig {
         final Rq message,
         final Class<Rs> responseType) throws RemotingException {
 
+        initialize();
+
+        if (defaultDestination == null) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Routing key or queue must be configured.");
+        }
+
+        return send(defaultDestination, message, responseType);
+    }
+
+    /**
+     * Send message with priority.
+     * @param <Rq> The request type
+     * @param message The message object
+     * @param priority The message priority, from 0 to 255
+     * @throws RemotingException if unable to send the message
+     */
+    public <Rq> void send(
+        final Rq message,
+        final int priority) throws RemotingException {
+
+        initialize();
+
+        if (defaultDestination == null) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Routing key or queue must be configured.");
+        }
+
+        send(defaultDestination.priority(priority), message, Void.class);
+    }
+
+    /**
+     * Send message to exchange with routing key.
+     * @param <Rq> The request type
+     * @param exchange The exchange
+     * @param routingKey The routing key
+     * @param message The message object
+     * @throws RemotingException if unable to send the message
+     */
+    public <Rq> void send(
+        final String exchange,
+        final String routingKey,
+        final Rq message) throws RemotingException {
+
+        send(getDestination(exchange, routingKey), message, Void.class);
+    }
+
+    /**
+     * Send message to exchange with routing key and receive response.
+     * @param <Rq> The request type
+     * @param <Rs> The response type
+     * @param exchange The exchange
+     * @param routingKey The routing key
+     * @param message The message object
+     * @param responseType The response object type
+     * @return The response object
+     * @throws RemotingException if unable to send the message
+     */
+    public <Rq, Rs> Rs send(
+        final String exchange,
+        final String routingKey,
+        final Rq message,
+        final Class<Rs> responseType) throws RemotingException {
+
+        return send(getDestination(exchange, routingKey), message, responseType);
+    }
+
+    /**
+     * Get destination.  The destination is created once for each combination of
+     * exchange and routing key, and is cached for reuse.  At most {@code MAX_DESTINATIONS}
+     * destinations are cached, so a destination for a routing key which varies with every
+     * message, such as one per entity, is created afresh once the cache is full, rather than
+     * growing the cache without bound.  Callers which send to many routing keys should use a
+     * routing key template instead.  All destinations share the connection pool of the client.
+     * @param exchange The exchange, or null for the default exchange
+     * @param routingKey The routing key
+     * @return The destination
+     * @throws RemotingException if unable to get the destination
+     */
+    public Destination getDestination(
+        final String exchange,
+        final String routingKey) throws RemotingException {
+
+        List<String> key;
+        Destination destination;
+
+        initialize();
+
+        if (routingKey == null) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Routing key must be provided.");
+        }
+
+        key = Arrays.asList((exchange == null) ? "" : exchange, routingKey);
+
+        destination = destinations.get(key);
+
+        if ((destination == null) && (destinations.size() >= MAX_DESTINATIONS)) {
+            destination = new Destination(this, exchange, routingKey);
+        }
+        else if (destination == null) {
+            destination = destinations.computeIfAbsent(key, k -> new Destination(this, exchange, routingKey));
+        }
+
+        return destination;
+    }
+
+    /**
+     * Publish stream of messages.  The messages are published with publisher confirms, and
+     * no more than the maximum number of unconfirmed messages are requested from the upstream
+     * publisher at a time.  The returned publisher emits the result for each message, in
+     * the order that the messages were published, and starts publishing when it is subscribed to.
+     * @param <Rq> The request type
+     * @param messages The publisher of the messages
+     * @return The publisher of the results
+     * @throws RemotingException if unable to publish the messages
+     */
+    public <Rq> ConfirmedPublisher<Rq> publish(
+        final Publisher<Rq> messages) throws RemotingException {
+
+        initialize();
+
+        if (defaultDestination == null) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Routing key or queue must be configured.");
+        }
+
+        topologyManager.declare(getTopology());
+
+        return defaultDestination.publish(messages);
+    }
+
+    /**
+     * Serialize message.
+     * @param message The message object
+     * @return The serialized message
+     * @throws RemotingException if unable to serialize the message
+     */
+    String serialize(
+        final Object message) throws RemotingException {
+
+        try {
+
+            return (message instanceof String) ? (String) message : objectMapper.writeValueAsString(message);
+        }
+        catch (Exception exception) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Failed to serialize message: " + exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Send message to destination and receive response.
+     * @param <Rq> The request type
+     * @param <Rs> The response type
+     * @param destination The destination
+     * @param message The message object
+     * @param responseType The response object type
+     * @return The response object
+     * @throws RemotingException if unable to send the message
+     */
+    <Rq, Rs> Rs send(
+        final Destination destination,
+        final Rq message,
+        final Class<Rs> responseType) throws RemotingException {
+
         String methodName = "send";
         String payload;
+        Map<String, Object> headers;
+        String routingKey;
         TransactionContext transactionContext;
         Timer timer;
         Object reply;
@@ -165,14 +753,20 @@ public class RabbitMQClient extends RabbitMQClientConfig {
         Rs response;
 
         initialize();
-
+
+        topologyManager.declare(getTopology());
+
+        headers = (destination.isTemplated() == true) ? new HashMap<String, Object>() : null;
+
         try {
 
-            payload = (message instanceof String) ? (String) message : objectMapper.writeValueAsString(message);
+            routingKey = destination.getRoutingKey(message, headers);
         }
-        catch (Exception exception) {
-            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Failed to serialize message: " + exception.getMessage(), exception);
+        catch (IllegalArgumentException exception) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Failed to derive routing key: " + exception.getMessage(), exception);
         }
+
+        payload = serialize(message);
 
         if (payload != null) {
             logger.debug(methodName, "message = ", payload);
@@ -186,15 +780,15 @@ public class RabbitMQClient extends RabbitMQClientConfig {
 
             if (responseType != Void.class) {
 
-                reply = rabbitMQTemplate.convertSendAndReceive(ObjectUtil.coalesce(getRoutingKey(), getQueue()), (Object) payload,
-                    new MessagePostProcessor(transactionContext.getTransactionId()));
+                reply = rabbitMQTemplate.convertSendAndReceive(destination.getExchange(), routingKey, (Object) payload,
+                    new MessagePostProcessor(transactionContext.getTransactionId(), destination.getPriority(), headers));
 
                 payload = (reply == null) ? null : (String) reply;
             }
             else {
 
-                rabbitMQTemplate.convertAndSend(ObjectUtil.coalesce(getRoutingKey(), getQueue()), (Object) payload,
-                    new MessagePostProcessor((transactionContext.getTransactionId())));
+                rabbitMQTemplate.convertAndSend(destination.getExchange(), routingKey, (Object) payload,
+                    new MessagePostProcessor(transactionContext.getTransactionId(), destination.getPriority(), headers));
 
                 payload = null;
             }
@@ -23,6 +23,8 @@ public class RabbitMQClientBuilder {
 
     private SSLContext sslContext;
 
+    private Class<?>[] types = new Class<?>[0];
+
     /**
      * Constructor.
      */
@@ -46,7 +48,7 @@ public class RabbitMQClientBuilder {
      */
     public RabbitMQClient build() {
 
-        return new RabbitMQClient(async, ssl, sslContext);
+        return new RabbitMQClient(async, ssl, sslContext, types);
     }
 
     /**
@@ -84,4 +86,18 @@ public class RabbitMQClientBuilder {
         return this;
     }
 
+    /**
+     * Set message types.  The object mapper is primed for
+     * these types when the client is warmed up.
+     * @param types The message types
+     * @return The RabbitMQ client builder
+     */
+    public RabbitMQClientBuilder types(
+        final Class<?>... types) {
+
+        this.types = types;
+
+        return this;
+    }
+
 }
@@ -8,6 +8,7 @@
 */
 package org.melior.client.rabbitmq;
 import org.melior.client.core.ClientConfig;
+import org.melior.util.number.Clamp;
 
 /**
  * Configuration parameters for a {@code RabbitMQClient}, with defaults.
@@ -21,7 +22,35 @@ public class RabbitMQClientConfig extends ClientConfig {
     private String routingKey;
 
     private String queue;
+
+    private String routingKeyTemplate;
 
+    private String addresses;
+
+    private LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+
+    private String managementUrl;
+
+    private boolean warmUp = false;
+
+    private int maximumUnconfirmed = 256;
+
+    private BlockedPolicy blockedPolicy = BlockedPolicy.FAIL;
+
+    private boolean channelAffinity = false;
+
+    private int channelIdleTimeout = 60000;
+
+    private int consumerMinimumConnections = -1;
+
+    private int consumerMaximumConnections = -1;
+
+    private int consumerConnectionTimeout = -1;
+
+    private int consumerInactivityTimeout = -1;
+
+    private Topology topology;
+
     /**
      * Constructor.
      */
@@ -41,6 +70,20 @@ public class RabbitMQClientConfig extends ClientConfig {
         this.exchange = clientConfig.exchange;
         this.routingKey = clientConfig.routingKey;
         this.queue = clientConfig.queue;
+        this.routingKeyTemplate = clientConfig.routingKeyTemplate;
+        this.addresses = clientConfig.addresses;
+        this.loadBalancing = clientConfig.loadBalancing;
+        this.managementUrl = clientConfig.managementUrl;
+        this.warmUp = clientConfig.warmUp;
+        this.maximumUnconfirmed = clientConfig.maximumUnconfirmed;
+        this.blockedPolicy = clientConfig.blockedPolicy;
+        this.channelAffinity = clientConfig.channelAffinity;
+        this.channelIdleTimeout = clientConfig.channelIdleTimeout;
+        this.consumerMinimumConnections = clientConfig.consumerMinimumConnections;
+        this.consumerMaximumConnections = clientConfig.consumerMaximumConnections;
+        this.consumerConnectionTimeout = clientConfig.consumerConnectionTimeout;
+        this.consumerInactivityTimeout = clientConfig.consumerInactivityTimeout;
+        this.topology = clientConfig.topology;
 
         return this;
     }
@@ -78,6 +121,24 @@ public class RabbitMQClientConfig extends ClientConfig {
         final String routingKey) {
         this.routingKey = routingKey;
     }
+
+    /**
+     * Get routing key template.
+     * @return The routing key template
+     */
+    public String getRoutingKeyTemplate() {
+        return routingKeyTemplate;
+    }
+
+    /**
+     * Set routing key template.  The routing key of each message is derived from the
+     * fields of the message that are named in the template, for example {@code {category}.{type}}.
+     * @param routingKeyTemplate The routing key template
+     */
+    public void setRoutingKeyTemplate(
+        final String routingKeyTemplate) {
+        this.routingKeyTemplate = routingKeyTemplate;
+    }
 
     /**
      * Get queue.
@@ -96,4 +157,225 @@ public class RabbitMQClientConfig extends ClientConfig {
         this.queue = queue;
     }
 
+    /**
+     * Get addresses.
+     * @return The addresses
+     */
+    public String getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Set addresses.
+     * @param addresses The comma-separated list of host:port addresses of the nodes in the cluster
+     */
+    public void setAddresses(
+        final String addresses) {
+        this.addresses = addresses;
+    }
+
+    /**
+     * Get load balancing strategy.
+     * @return The load balancing strategy
+     */
+    public LoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    /**
+     * Set load balancing strategy.
+     * @param loadBalancing The load balancing strategy
+     */
+    public void setLoadBalancing(
+        final LoadBalancing loadBalancing) {
+        this.loadBalancing = (loadBalancing == null) ? LoadBalancing.ROUND_ROBIN : loadBalancing;
+    }
+
+    /**
+     * Get management URL.
+     * @return The management URL
+     */
+    public String getManagementUrl() {
+        return managementUrl;
+    }
+
+    /**
+     * Set management URL.
+     * @param managementUrl The management URL
+     */
+    public void setManagementUrl(
+        final String managementUrl) {
+        this.managementUrl = managementUrl;
+    }
+
+    /**
+     * Get warm-up indicator.
+     * @return true if the client is warmed up at startup, false otherwise
+     */
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Set warm-up indicator.
+     * @param warmUp true if the client is warmed up at startup, false otherwise
+     */
+    public void setWarmUp(
+        final boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * Get maximum number of unconfirmed messages.
+     * @return The maximum number of unconfirmed messages
+     */
+    public int getMaximumUnconfirmed() {
+        return maximumUnconfirmed;
+    }
+
+    /**
+     * Set maximum number of unconfirmed messages.
+     * @param maximumUnconfirmed The maximum number of unconfirmed messages
+     */
+    public void setMaximumUnconfirmed(
+        final int maximumUnconfirmed) {
+        this.maximumUnconfirmed = Clamp.clampInt(maximumUnconfirmed, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get blocked policy.
+     * @return The blocked policy
+     */
+    public BlockedPolicy getBlockedPolicy() {
+        return blockedPolicy;
+    }
+
+    /**
+     * Set blocked policy.
+     * @param blockedPolicy The blocked policy
+     */
+    public void setBlockedPolicy(
+        final BlockedPolicy blockedPolicy) {
+        this.blockedPolicy = (blockedPolicy == null) ? BlockedPolicy.FAIL : blockedPolicy;
+    }
+
+    /**
+     * Check whether publisher channels are leased to threads.
+     * @return true if publisher channels are leased to threads, false otherwise
+     */
+    public boolean isChannelAffinity() {
+        return channelAffinity;
+    }
+
+    /**
+     * Set whether publisher channels are leased to threads.
+     * @param channelAffinity true if publisher channels are leased to threads, false otherwise
+     */
+    public void setChannelAffinity(
+        final boolean channelAffinity) {
+        this.channelAffinity = channelAffinity;
+    }
+
+    /**
+     * Get channel idle timeout.
+     * @return The amount of time after which an idle leased channel is returned to the pool, in milliseconds
+     */
+    public int getChannelIdleTimeout() {
+        return channelIdleTimeout;
+    }
+
+    /**
+     * Set channel idle timeout.
+     * @param channelIdleTimeout The amount of time after which an idle leased channel is returned to the pool, in seconds
+     */
+    public void setChannelIdleTimeout(
+        final int channelIdleTimeout) {
+        this.channelIdleTimeout = Clamp.clampInt(channelIdleTimeout, 1, Integer.MAX_VALUE / 1000) * 1000;
+    }
+
+    /**
+     * Get minimum number of consumer connections.
+     * @return The minimum number of consumer connections, or -1 to use the minimum number of connections
+     */
+    public int getConsumerMinimumConnections() {
+        return consumerMinimumConnections;
+    }
+
+    /**
+     * Set minimum number of consumer connections.
+     * @param consumerMinimumConnections The minimum number of consumer connections
+     */
+    public void setConsumerMinimumConnections(
+        final int consumerMinimumConnections) {
+        this.consumerMinimumConnections = Clamp.clampInt(consumerMinimumConnections, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get maximum number of consumer connections.
+     * @return The maximum number of consumer connections, or -1 to use the maximum number of connections
+     */
+    public int getConsumerMaximumConnections() {
+        return consumerMaximumConnections;
+    }
+
+    /**
+     * Set maximum number of consumer connections.
+     * @param consumerMaximumConnections The maximum number of consumer connections
+     */
+    public void setConsumerMaximumConnections(
+        final int consumerMaximumConnections) {
+        this.consumerMaximumConnections = Clamp.clampInt(consumerMaximumConnections, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get consumer connection timeout.
+     * @return The consumer connection timeout in milliseconds, or -1 to use the connection timeout
+     */
+    public int getConsumerConnectionTimeout() {
+        return consumerConnectionTimeout;
+    }
+
+    /**
+     * Set consumer connection timeout.
+     * @param consumerConnectionTimeout The consumer connection timeout, in seconds
+     */
+    public void setConsumerConnectionTimeout(
+        final int consumerConnectionTimeout) {
+        this.consumerConnectionTimeout = Clamp.clampInt(consumerConnectionTimeout, 0, Integer.MAX_VALUE / 1000) * 1000;
+    }
+
+    /**
+     * Get consumer inactivity timeout.
+     * @return The consumer inactivity timeout in milliseconds, or -1 to use the inactivity timeout
+     */
+    public int getConsumerInactivityTimeout() {
+        return consumerInactivityTimeout;
+    }
+
+    /**
+     * Set consumer inactivity timeout.
+     * @param consumerInactivityTimeout The consumer inactivity timeout, in seconds
+     */
+    public void setConsumerInactivityTimeout(
+        final int consumerInactivityTimeout) {
+        this.consumerInactivityTimeout = Clamp.clampInt(consumerInactivityTimeout, 0, Integer.MAX_VALUE / 1000) * 1000;
+    }
+
+    /**
+     * Get topology.
+     * @return The topology which is declared when the client is first used
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Set topology.
+     * @param topology The topology which is declared when the client is first used
+     */
+    public void setTopology(
+        final Topology topology) {
+        this.topology = topology;
+    }
+
 }
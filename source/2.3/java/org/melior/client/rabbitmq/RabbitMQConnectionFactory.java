@@ -7,17 +7,37 @@
         Service Harness
 */
 package org.melior.client.rabbitmq;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.rabbit.connection.AbstractConnectionFactory;
 import org.springframework.amqp.rabbit.connection.Connection;
+import com.rabbitmq.client.BlockedListener;
 import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
 
 /**
- * Implements a factory for raw RabbitMQ {@code Connection} objects.
+ * Implements a factory for raw RabbitMQ {@code Connection} objects.  The
+ * factory keeps count of the connections that it has opened and that
+ * have not been closed yet, to allow connections to be balanced across
+ * the nodes in a RabbitMQ cluster.
+ * <p>
+ * The factory also tracks which of its connections have been blocked by the
+ * RabbitMQ server with {@code connection.blocked}, because of a memory or
+ * disk alarm, so that messages can be sent on unblocked connections instead.
+ * <p>
+ * The factory listens for the shutdown of its connections, and notifies its
+ * connection listeners when a connection is lost, to allow consumers to be
+ * recovered as soon as the loss is detected.
  * @author Melior
  * @since 2.3
  */
 public class RabbitMQConnectionFactory extends AbstractConnectionFactory implements ShutdownListener {
+
+    private AtomicInteger openConnections = new AtomicInteger();
+
+    private Set<com.rabbitmq.client.Connection> blockedConnections = ConcurrentHashMap.newKeySet();
 
     /**
      * Constructor.
@@ -64,7 +84,83 @@ public class RabbitMQConnectionFactory extends AbstractConnectionFactory impleme
      */
     public final Connection createConnection() throws AmqpException {
 
-        return super.createBareConnection();
+        Connection connection;
+
+        connection = super.createBareConnection();
+
+        openConnections.incrementAndGet();
+
+        connection.getDelegate().addShutdownListener(this);
+
+        connection.addBlockedListener(new BlockedListener() {
+
+            public void handleBlocked(
+                final String reason) {
+
+                blockedConnections.add(connection.getDelegate());
+            }
+
+            public void handleUnblocked() {
+
+                blockedConnections.remove(connection.getDelegate());
+            }
+
+        });
+
+        return connection;
+    }
+
+    /**
+     * Handle shutdown of connection.  Connection listeners are notified when a connection is
+     * lost, but not when it is closed by the application.
+     * @param cause The cause of the shutdown
+     */
+    public void shutdownCompleted(
+        final ShutdownSignalException cause) {
+
+        if ((cause.isHardError() == false) || (cause.isInitiatedByApplication() == true)) {
+            return;
+        }
+
+        getConnectionListener().onShutDown(cause);
+    }
+
+    /**
+     * Notify factory that a connection which it opened has been closed.
+     * @param connection The connection
+     */
+    void connectionClosed(
+        final Connection connection) {
+
+        blockedConnections.remove(connection.getDelegate());
+
+        openConnections.decrementAndGet();
+    }
+
+    /**
+     * Check whether connection has been blocked by the RabbitMQ server.
+     * @param connection The raw connection
+     * @return true if the connection is blocked, false otherwise
+     */
+    public boolean isBlocked(
+        final com.rabbitmq.client.Connection connection) {
+        return (connection != null) && (blockedConnections.contains(connection) == true);
+    }
+
+    /**
+     * Get number of blocked connections.
+     * @return The number of blocked connections
+     */
+    public int getBlockedConnections() {
+        return blockedConnections.size();
+    }
+
+    /**
+     * Get number of open connections.
+     * @return The number of open connections
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
     }
 
 }
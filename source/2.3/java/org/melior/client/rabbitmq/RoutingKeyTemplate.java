@@ -0,0 +1,254 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A routing key which is derived from the fields of each message, for example
+ * {@code {category}.{type}}.  Each placeholder names a property of the message,
+ * which is read through its public getter, or its public field if it has no getter.
+ * The message class itself need not be public.  If the message is a {@code Map}, then
+ * the placeholder names a key in the map.  A property which is null cannot be part of
+ * the routing key, so a message with a null property is rejected rather than routed
+ * with an empty segment.
+ * <p>
+ * The accessors for the properties are looked up once for each message class and
+ * compiled into method handles, so that no reflection takes place when a message
+ * is sent.  The resolved property values may also be added to the message headers,
+ * so that the messages may be routed by a headers exchange as well as by a topic
+ * or direct exchange.
+ * @author Melior
+ * @since 2.3
+ */
+class RoutingKeyTemplate {
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private String template;
+
+    private String[] literals;
+
+    private String[] properties;
+
+    private ClassValue<MethodHandle[]> accessors;
+
+    /**
+     * Constructor.
+     * @param template The routing key template
+     * @throws IllegalArgumentException if the template is malformed
+     */
+    RoutingKeyTemplate(
+        final String template) throws IllegalArgumentException {
+
+        super();
+
+        List<String> literals;
+        List<String> properties;
+        int start;
+        int end;
+
+        this.template = template;
+
+        literals = new ArrayList<String>();
+        properties = new ArrayList<String>();
+        start = 0;
+
+        while ((end = template.indexOf('{', start)) >= 0) {
+            literals.add(template.substring(start, end));
+
+            start = template.indexOf('}', end);
+
+            if ((start < 0) || (start == end + 1)) {
+                throw new IllegalArgumentException("Routing key template [" + template + "] is malformed.");
+            }
+
+            properties.add(template.substring(end + 1, start).trim());
+            start++;
+        }
+
+        literals.add(template.substring(start));
+
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.properties = properties.toArray(new String[properties.size()]);
+
+        accessors = new ClassValue<MethodHandle[]>() {
+
+            protected MethodHandle[] computeValue(
+                final Class<?> type) {
+
+                return compile(type);
+            }
+
+        };
+    }
+
+    /**
+     * Resolve routing key from message.
+     * @param message The message
+     * @param headers The message headers to add the property values to, or null
+     * @return The routing key
+     * @throws IllegalArgumentException if unable to read a property of the message, or if a property is null
+     */
+    String resolve(
+        final Object message,
+        final Map<String, Object> headers) throws IllegalArgumentException {
+
+        StringBuilder builder;
+        MethodHandle[] handles;
+        Object value;
+
+        builder = new StringBuilder(template.length() + 16 * properties.length);
+        handles = (message instanceof Map) ? null : accessors.get(message.getClass());
+
+        for (int i = 0; i < properties.length; i++) {
+
+            try {
+
+                value = (handles == null) ? ((Map<?, ?>) message).get(properties[i]) : (Object) handles[i].invokeExact(message);
+            }
+            catch (Throwable exception) {
+                throw new IllegalArgumentException("Failed to read property [" + properties[i] + "]: " + exception.getMessage(), exception);
+            }
+
+            if (value == null) {
+                throw new IllegalArgumentException("Property [" + properties[i] + "] of the message is null, so routing key template [" + template + "] cannot be resolved.");
+            }
+
+            builder.append(literals[i]).append(value);
+
+            if (headers != null) {
+                headers.put(properties[i], (value instanceof Number) || (value instanceof Boolean) ? value : value.toString());
+            }
+
+        }
+
+        return builder.append(literals[properties.length]).toString();
+    }
+
+    /**
+     * Compile accessors for the properties of a message class.  The accessors are made
+     * accessible first, so that the public members of a class which is not public itself,
+     * such as a private nested class, may be read too.
+     * @param type The message class
+     * @return The accessors, in the order of the placeholders
+     * @throws IllegalArgumentException if a property has no public accessor
+     */
+    private MethodHandle[] compile(
+        final Class<?> type) throws IllegalArgumentException {
+
+        MethodHandle[] handles;
+
+        handles = new MethodHandle[properties.length];
+
+        for (int i = 0; i < properties.length; i++) {
+
+            try {
+
+                handles[i] = MethodHandles.lookup().unreflect(accessible(getter(type, properties[i]))).asType(ACCESSOR_TYPE);
+            }
+            catch (NoSuchMethodException exception) {
+
+                try {
+
+                    handles[i] = MethodHandles.lookup().unreflectGetter(accessible(field(type, properties[i]))).asType(ACCESSOR_TYPE);
+                }
+                catch (NoSuchFieldException exception2) {
+                    throw new IllegalArgumentException("Class [" + type.getName() + "] has no public accessor for property [" + properties[i] + "].");
+                }
+                catch (IllegalAccessException | RuntimeException exception2) {
+                    throw new IllegalArgumentException("Property [" + properties[i] + "] of class [" + type.getName() + "] is not accessible.");
+                }
+
+            }
+            catch (IllegalAccessException | RuntimeException exception) {
+                throw new IllegalArgumentException("Property [" + properties[i] + "] of class [" + type.getName() + "] is not accessible.");
+            }
+
+        }
+
+        return handles;
+    }
+
+    /**
+     * Find public getter for property.
+     * @param type The class
+     * @param property The property name
+     * @return The getter
+     * @throws NoSuchMethodException if the class has no public getter for the property
+     */
+    private static Method getter(
+        final Class<?> type,
+        final String property) throws NoSuchMethodException {
+
+        String suffix;
+
+        suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+
+        for (String name : new String[] {"get" + suffix, "is" + suffix, property}) {
+
+            try {
+
+                return type.getMethod(name);
+            }
+            catch (NoSuchMethodException exception) {
+                continue;
+            }
+
+        }
+
+        throw new NoSuchMethodException(property);
+    }
+
+    /**
+     * Make member accessible, regardless of the visibility of the class which declares it.
+     * @param <M> The type of member
+     * @param member The member
+     * @return The member
+     * @throws SecurityException if the member cannot be made accessible
+     */
+    private static <M extends AccessibleObject> M accessible(
+        final M member) throws SecurityException {
+
+        member.setAccessible(true);
+
+        return member;
+    }
+
+    /**
+     * Find public field for property.
+     * @param type The class
+     * @param property The property name
+     * @return The field
+     * @throws NoSuchFieldException if the class has no public instance field for the property
+     */
+    private static Field field(
+        final Class<?> type,
+        final String property) throws NoSuchFieldException {
+
+        Field field;
+
+        field = type.getField(property);
+
+        if (Modifier.isStatic(field.getModifiers()) == true) {
+            throw new NoSuchFieldException(property);
+        }
+
+        return field;
+    }
+
+}
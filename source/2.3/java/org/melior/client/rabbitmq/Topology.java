@@ -0,0 +1,235 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.ExchangeBuilder;
+import org.springframework.amqp.core.Queue;
+
+/**
+ * A declarative model of the exchanges, queues and bindings that an application
+ * requires on the RabbitMQ server.  A topology may be configured on a {@code RabbitMQClient}
+ * and on a {@code RabbitMQListener}, which declare it on the RabbitMQ server when it is
+ * first needed.
+ * <p>
+ * The client remembers what it has declared, so that each exchange, queue and binding
+ * is declared once only, rather than every time that a listener starts or a message is
+ * sent.  The exchanges and queues are declared in parallel, followed by the bindings in
+ * parallel, and any declaration which conflicts with what already exists on the RabbitMQ
+ * server is reported at once.  What has been declared is forgotten when a connection to
+ * the RabbitMQ server is lost, so that the topology is declared again after recovery.
+ * <p>
+ * A sharded queue spreads one logical stream of messages over several queues,
+ * which may be led by different nodes of a RabbitMQ cluster, behind an exchange
+ * of type {@code x-consistent-hash}.  The exchange has the logical name of the
+ * queue, and routes each message to a shard by the hash of its routing key, so
+ * that all messages with the same routing key land on the same shard.
+ * <pre>
+ * Topology.create()
+ *     .exchange("orders", "topic")
+ *     .queue("orders.created")
+ *     .binding("orders", "orders.created", "order.created.#");
+ * </pre>
+ * @author Melior
+ * @since 2.3
+ */
+public class Topology {
+
+    private List<Exchange> exchanges;
+
+    private List<Queue> queues;
+
+    private List<Binding> bindings;
+
+    /**
+     * Constructor.
+     */
+    private Topology() {
+
+        super();
+
+        exchanges = new ArrayList<Exchange>();
+
+        queues = new ArrayList<Queue>();
+
+        bindings = new ArrayList<Binding>();
+    }
+
+    /**
+     * Create topology.
+     * @return The topology
+     */
+    public static Topology create() {
+
+        return new Topology();
+    }
+
+    /**
+     * Add durable exchange.
+     * @param name The exchange name
+     * @param type The exchange type, for example direct, topic, fanout or headers
+     * @return The topology
+     */
+    public Topology exchange(
+        final String name,
+        final String type) {
+
+        return exchange(name, type, null);
+    }
+
+    /**
+     * Add durable exchange with arguments.
+     * @param name The exchange name
+     * @param type The exchange type, for example direct, topic, fanout or headers
+     * @param arguments The exchange arguments
+     * @return The topology
+     */
+    public Topology exchange(
+        final String name,
+        final String type,
+        final Map<String, Object> arguments) {
+
+        ExchangeBuilder builder;
+
+        builder = new ExchangeBuilder(name, type).durable(true);
+
+        if (arguments != null) {
+            builder.withArguments(arguments);
+        }
+
+        exchanges.add(builder.build());
+
+        return this;
+    }
+
+    /**
+     * Add durable queue.
+     * @param name The queue name
+     * @return The topology
+     */
+    public Topology queue(
+        final String name) {
+
+        return queue(name, null);
+    }
+
+    /**
+     * Add durable queue with arguments.
+     * @param name The queue name
+     * @param arguments The queue arguments, for example x-queue-type or x-max-priority
+     * @return The topology
+     */
+    public Topology queue(
+        final String name,
+        final Map<String, Object> arguments) {
+
+        queues.add(new Queue(name, true, false, false, arguments));
+
+        return this;
+    }
+
+    /**
+     * Add sharded queue.  Requires the consistent hash exchange plugin on the RabbitMQ server.
+     * @param name The logical queue name, which is also the name of the exchange
+     * @param shards The number of shards
+     * @param arguments The arguments of each shard queue, or null
+     * @return The topology
+     */
+    public Topology shardedQueue(
+        final String name,
+        final int shards,
+        final Map<String, Object> arguments) {
+
+        exchange(name, "x-consistent-hash");
+
+        for (int i = 0; i < shards; i++) {
+            queue(getShardName(name, i), arguments);
+            binding(name, getShardName(name, i), "1");
+        }
+
+        return this;
+    }
+
+    /**
+     * Get name of shard of sharded queue.
+     * @param name The logical queue name
+     * @param shard The shard number, from 0
+     * @return The name of the shard queue
+     */
+    public static String getShardName(
+        final String name,
+        final int shard) {
+
+        return name + "." + shard;
+    }
+
+    /**
+     * Add binding of queue to exchange.
+     * @param exchange The exchange name
+     * @param queue The queue name
+     * @param routingKey The routing key, or binding pattern for a topic exchange
+     * @return The topology
+     */
+    public Topology binding(
+        final String exchange,
+        final String queue,
+        final String routingKey) {
+
+        return binding(exchange, queue, routingKey, null);
+    }
+
+    /**
+     * Add binding of queue to exchange with arguments.  The arguments of a binding
+     * to a headers exchange hold the headers to match, along with {@code x-match}.
+     * @param exchange The exchange name
+     * @param queue The queue name
+     * @param routingKey The routing key, or binding pattern for a topic exchange
+     * @param arguments The binding arguments
+     * @return The topology
+     */
+    public Topology binding(
+        final String exchange,
+        final String queue,
+        final String routingKey,
+        final Map<String, Object> arguments) {
+
+        bindings.add(new Binding(queue, Binding.DestinationType.QUEUE, exchange, (routingKey == null) ? "" : routingKey, arguments));
+
+        return this;
+    }
+
+    /**
+     * Get exchanges.
+     * @return The exchanges
+     */
+    List<Exchange> getExchanges() {
+        return Collections.unmodifiableList(exchanges);
+    }
+
+    /**
+     * Get queues.
+     * @return The queues
+     */
+    List<Queue> getQueues() {
+        return Collections.unmodifiableList(queues);
+    }
+
+    /**
+     * Get bindings.
+     * @return The bindings
+     */
+    List<Binding> getBindings() {
+        return Collections.unmodifiableList(bindings);
+    }
+
+}
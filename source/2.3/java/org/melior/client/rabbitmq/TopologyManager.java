@@ -0,0 +1,303 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.melior.client.exception.RemotingException;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.melior.service.exception.ExceptionType;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Declares topologies on the RabbitMQ server, and remembers what has been declared,
+ * so that each exchange, queue and binding is declared once only.  The exchanges and
+ * queues of a topology are declared in parallel, followed by its bindings in parallel.
+ * <p>
+ * The declarations are made on a dedicated connection, which is not taken from the
+ * connection pool, with a channel of its own for each declaration, because the RabbitMQ
+ * server closes the channel on which a declaration fails.  The connection is closed
+ * once the topology has been declared.
+ * <p>
+ * The manager listens to the connections of the client, and forgets what has been
+ * declared when a connection to the RabbitMQ server is lost, so that the topology
+ * is declared again the next time that it is needed after recovery.
+ * @author Melior
+ * @since 2.3
+ * @see Topology
+ */
+class TopologyManager implements ConnectionListener {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private ConnectionFactory connectionFactory;
+
+    private Set<String> declared;
+
+    private Set<Topology> topologies;
+
+    /**
+     * Constructor.
+     * @param connectionFactory The connection factory with which to open the dedicated connections
+     */
+    TopologyManager(
+        final ConnectionFactory connectionFactory) {
+
+        super();
+
+        this.connectionFactory = connectionFactory;
+
+        declared = ConcurrentHashMap.newKeySet();
+
+        topologies = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Declare topology, unless it has already been declared since the last connection loss.
+     * @param topology The topology
+     * @throws RemotingException if unable to declare the topology
+     */
+    void declare(
+        final Topology topology) throws RemotingException {
+
+        String methodName = "declare";
+        Connection connection;
+        Queue<String> failures;
+
+        if ((topology == null) || (topologies.contains(topology) == true)) {
+            return;
+        }
+
+        synchronized (this) {
+
+            if (topologies.contains(topology) == true) {
+                return;
+            }
+
+            try {
+
+                connection = connectionFactory.createDedicatedConnection();
+            }
+            catch (AmqpException exception) {
+                throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to open connection: " + exception.getMessage(), exception);
+            }
+
+            failures = new ConcurrentLinkedQueue<String>();
+
+            try {
+
+                topology.getExchanges().parallelStream().forEach(exchange -> declare(connection, exchange, failures));
+                topology.getQueues().parallelStream().forEach(queue -> declare(connection, queue, failures));
+
+                if (failures.isEmpty() == true) {
+                    topology.getBindings().parallelStream().forEach(binding -> declare(connection, binding, failures));
+                }
+
+            }
+            finally {
+
+                connection.close();
+            }
+
+            if (failures.isEmpty() == false) {
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Failed to declare topology: " + String.join("; ", failures));
+            }
+
+            topologies.add(topology);
+
+            logger.debug(methodName, "Topology declared successfully.  Exchanges = ", topology.getExchanges().size(),
+                ", Queues = ", topology.getQueues().size(), ", Bindings = ", topology.getBindings().size(), ".");
+        }
+
+    }
+
+    /**
+     * Declare exchange, unless it has already been declared.
+     * @param connection The dedicated connection
+     * @param exchange The exchange
+     * @param failures The failures
+     */
+    private void declare(
+        final Connection connection,
+        final Exchange exchange,
+        final Queue<String> failures) {
+
+        String key;
+        Channel channel;
+
+        key = "exchange:" + exchange.getName();
+
+        if (declared.contains(key) == true) {
+            return;
+        }
+
+        channel = null;
+
+        try {
+
+            channel = connection.createChannel(false);
+            channel.exchangeDeclare(exchange.getName(), exchange.getType(), exchange.isDurable(), exchange.isAutoDelete(),
+                exchange.isInternal(), exchange.getArguments());
+
+            declared.add(key);
+        }
+        catch (Exception exception) {
+            failures.add("exchange [" + exchange.getName() + "] " + exception.getMessage());
+        }
+        finally {
+
+            close(channel);
+        }
+
+    }
+
+    /**
+     * Declare queue, unless it has already been declared.
+     * @param connection The dedicated connection
+     * @param queue The queue
+     * @param failures The failures
+     */
+    private void declare(
+        final Connection connection,
+        final org.springframework.amqp.core.Queue queue,
+        final Queue<String> failures) {
+
+        String key;
+        Channel channel;
+
+        key = "queue:" + queue.getName();
+
+        if (declared.contains(key) == true) {
+            return;
+        }
+
+        channel = null;
+
+        try {
+
+            channel = connection.createChannel(false);
+            channel.queueDeclare(queue.getName(), queue.isDurable(), queue.isExclusive(), queue.isAutoDelete(), queue.getArguments());
+
+            declared.add(key);
+        }
+        catch (Exception exception) {
+            failures.add("queue [" + queue.getName() + "] " + exception.getMessage());
+        }
+        finally {
+
+            close(channel);
+        }
+
+    }
+
+    /**
+     * Declare binding, unless it has already been declared.
+     * @param connection The dedicated connection
+     * @param binding The binding
+     * @param failures The failures
+     */
+    private void declare(
+        final Connection connection,
+        final Binding binding,
+        final Queue<String> failures) {
+
+        String key;
+        Channel channel;
+
+        key = "binding:" + binding.getExchange() + "|" + binding.getDestination() + "|" + binding.getRoutingKey() + "|" + binding.getArguments();
+
+        if (declared.contains(key) == true) {
+            return;
+        }
+
+        channel = null;
+
+        try {
+
+            channel = connection.createChannel(false);
+
+            if (binding.isDestinationQueue() == true) {
+                channel.queueBind(binding.getDestination(), binding.getExchange(), binding.getRoutingKey(), binding.getArguments());
+            }
+            else {
+                channel.exchangeBind(binding.getDestination(), binding.getExchange(), binding.getRoutingKey(), binding.getArguments());
+            }
+
+            declared.add(key);
+        }
+        catch (Exception exception) {
+            failures.add("binding of queue [" + binding.getDestination() + "] to exchange [" + binding.getExchange() + "] " + exception.getMessage());
+        }
+        finally {
+
+            close(channel);
+        }
+
+    }
+
+    /**
+     * Close channel, if it is still open.  A channel on which a declaration failed
+     * has already been closed by the RabbitMQ server.
+     * @param channel The channel
+     */
+    private void close(
+        final Channel channel) {
+
+        String methodName = "close";
+
+        try {
+
+            if ((channel != null) && (channel.isOpen() == true)) {
+                channel.close();
+            }
+
+        }
+        catch (Exception exception) {
+            logger.debug(methodName, "Failed to close channel: ", exception.getMessage());
+        }
+
+    }
+
+    /**
+     * Handle creation of connection.
+     * @param connection The connection
+     */
+    public void onCreate(
+        final Connection connection) {
+    }
+
+    /**
+     * Handle loss of connection.  Forgets what has been declared, so that the
+     * topology is declared again after recovery.
+     * @param signal The shutdown signal
+     */
+    public void onShutDown(
+        final ShutdownSignalException signal) {
+
+        String methodName = "onShutDown";
+
+        if (declared.isEmpty() == true) {
+            return;
+        }
+
+        declared.clear();
+        topologies.clear();
+
+        logger.debug(methodName, "Connection lost.  Topology will be declared again when next needed.");
+    }
+
+}
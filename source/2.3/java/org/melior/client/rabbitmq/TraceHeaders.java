@@ -0,0 +1,202 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Propagates the transaction identifier and the W3C trace context of a transaction
+ * in the headers of RabbitMQ messages.  The transaction identifier is carried in the
+ * {@code x-transaction-id} header, and the trace context in the {@code traceparent}
+ * header, in the format {@code 00-<trace-id>-<parent-id>-<flags>}.
+ * <p>
+ * When a message is received, the trace context of the message is kept for the current
+ * thread, so that any message that the thread sends while processing it continues the
+ * same trace with a new parent identifier.  When there is no trace context to continue,
+ * the trace identifier is derived from the transaction identifier if it is a UUID, or is
+ * generated randomly otherwise.
+ * @author Melior
+ * @since 2.3
+ */
+public final class TraceHeaders {
+
+    /**
+     * The header which carries the transaction identifier.
+     */
+    public static final String TRANSACTION_ID = "x-transaction-id";
+
+    /**
+     * The header which carries the W3C trace context.
+     */
+    public static final String TRACEPARENT = "traceparent";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<String> traceparent = new ThreadLocal<String>();
+
+    /**
+     * Constructor.
+     */
+    private TraceHeaders() {
+
+        super();
+    }
+
+    /**
+     * Add trace headers to message headers.
+     * @param headers The message headers
+     * @param transactionId The transaction identifier
+     */
+    public static void inject(
+        final Map<String, Object> headers,
+        final String transactionId) {
+
+        if (transactionId != null) {
+            headers.put(TRANSACTION_ID, transactionId);
+        }
+
+        headers.put(TRACEPARENT, next(transactionId));
+    }
+
+    /**
+     * Restore trace context of received message for the current thread.
+     * @param headers The message headers
+     * @return The transaction identifier in the message headers, or null if there is none
+     */
+    public static String restore(
+        final Map<String, Object> headers) {
+
+        Object value;
+
+        if (headers == null) {
+            traceparent.set(null);
+
+            return null;
+        }
+
+        value = headers.get(TRACEPARENT);
+        traceparent.set(((value instanceof String) && (isValid((String) value) == true)) ? (String) value : null);
+
+        value = headers.get(TRANSACTION_ID);
+
+        return (value == null) ? null : value.toString();
+    }
+
+    /**
+     * Clear trace context of the current thread.
+     */
+    public static void clear() {
+
+        traceparent.set(null);
+    }
+
+    /**
+     * Get trace context for next message.  Continues the trace of the current thread
+     * if there is one, or starts a new trace otherwise.
+     * @param transactionId The transaction identifier
+     * @return The trace context
+     */
+    static String next(
+        final String transactionId) {
+
+        String parent;
+        StringBuilder builder;
+
+        parent = traceparent.get();
+        builder = new StringBuilder(55);
+
+        if (parent != null) {
+            builder.append(parent, 0, 36);
+            appendHex(builder, ThreadLocalRandom.current().nextLong() | 1L);
+            builder.append(parent, 52, 55);
+
+            return builder.toString();
+        }
+
+        builder.append("00-");
+
+        if ((transactionId == null) || (appendUuid(builder, transactionId) == false)) {
+            appendHex(builder, ThreadLocalRandom.current().nextLong());
+            appendHex(builder, ThreadLocalRandom.current().nextLong() | 1L);
+        }
+
+        builder.append('-');
+        appendHex(builder, ThreadLocalRandom.current().nextLong() | 1L);
+        builder.append("-01");
+
+        return builder.toString();
+    }
+
+    /**
+     * Check whether trace context is valid.
+     * @param value The trace context
+     * @return true if the trace context is valid, false otherwise
+     */
+    private static boolean isValid(
+        final String value) {
+
+        return (value.length() == 55) && (value.charAt(0) == '0') && (value.charAt(1) == '0')
+            && (value.charAt(2) == '-') && (value.charAt(35) == '-') && (value.charAt(52) == '-');
+    }
+
+    /**
+     * Append UUID as trace identifier, without the dashes.
+     * @param builder The builder
+     * @param uuid The UUID
+     * @return true if the UUID was appended, false if the value is not a UUID
+     */
+    private static boolean appendUuid(
+        final StringBuilder builder,
+        final String uuid) {
+
+        int length;
+        char character;
+
+        if ((uuid.length() != 36) || (uuid.charAt(8) != '-') || (uuid.charAt(13) != '-')
+            || (uuid.charAt(18) != '-') || (uuid.charAt(23) != '-')) {
+            return false;
+        }
+
+        length = builder.length();
+
+        for (int i = 0; i < 36; i++) {
+            character = Character.toLowerCase(uuid.charAt(i));
+
+            if (character == '-') {
+                continue;
+            }
+
+            if (((character < '0') || (character > '9')) && ((character < 'a') || (character > 'f'))) {
+                builder.setLength(length);
+
+                return false;
+            }
+
+            builder.append(character);
+        }
+
+        return true;
+    }
+
+    /**
+     * Append value as 16 hexadecimal digits.
+     * @param builder The builder
+     * @param value The value
+     */
+    private static void appendHex(
+        final StringBuilder builder,
+        final long value) {
+
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            builder.append(HEX[(int) (value >>> shift) & 0xF]);
+        }
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.amqp.AmqpException;
+import com.rabbitmq.client.Channel;
+
+/**
+ * A message which has been delivered by the RabbitMQ server to a subscriber of
+ * a {@code RabbitMQQueue} publisher.  The subscriber must acknowledge or reject
+ * each delivery, which releases credit for the RabbitMQ server to deliver the
+ * next message.
+ * @author Melior
+ * @since 2.3
+ * @see RabbitMQPublisher
+ */
+public class Delivery<T> {
+
+    private RabbitMQQueue<T> queue;
+
+    private Channel channel;
+
+    private long deliveryTag;
+
+    private Map<String, Object> headers;
+
+    private T message;
+
+    private AtomicBoolean settled;
+
+    /**
+     * Constructor.
+     * @param queue The queue
+     * @param channel The channel on which the message was delivered
+     * @param deliveryTag The delivery tag of the message
+     * @param headers The headers of the message
+     * @param message The message
+     */
+    Delivery(
+        final RabbitMQQueue<T> queue,
+        final Channel channel,
+        final long deliveryTag,
+        final Map<String, Object> headers,
+        final T message) {
+
+        super();
+
+        this.queue = queue;
+
+        this.channel = channel;
+
+        this.deliveryTag = deliveryTag;
+
+        this.headers = headers;
+
+        this.message = message;
+
+        settled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Get message.
+     * @return The message
+     */
+    public T getMessage() {
+        return message;
+    }
+
+    /**
+     * Acknowledge delivery.  Has no effect if the delivery has already been settled.
+     * @throws AmqpException if unable to acknowledge the delivery
+     */
+    public void ack() throws AmqpException {
+
+        if (settled.compareAndSet(false, true) == false) {
+            return;
+        }
+
+        try {
+
+            channel.basicAck(deliveryTag, false);
+        }
+        catch (Exception exception) {
+            throw new AmqpException(exception.getMessage());
+        }
+
+        queue.commit(headers);
+    }
+
+    /**
+     * Reject delivery.  Has no effect if the delivery has already been settled.
+     * @param requeue true if the message must be requeued, false otherwise
+     * @throws AmqpException if unable to reject the delivery
+     */
+    public void nack(
+        final boolean requeue) throws AmqpException {
+
+        if (settled.compareAndSet(false, true) == false) {
+            return;
+        }
+
+        queue.getFailedMessages().increment();
+        queue.fail(headers);
+
+        try {
+
+            channel.basicNack(deliveryTag, false, requeue);
+        }
+        catch (Exception exception) {
+            throw new AmqpException(exception.getMessage());
+        }
+
+    }
+
+    /**
+     * Requeue delivery which was never handed to the subscriber.
+     * Has no effect if the delivery has already been settled.
+     * @throws AmqpException if unable to requeue the delivery
+     */
+    void requeue() throws AmqpException {
+
+        if (settled.compareAndSet(false, true) == false) {
+            return;
+        }
+
+        try {
+
+            channel.basicNack(deliveryTag, false, true);
+        }
+        catch (Exception exception) {
+            throw new AmqpException(exception.getMessage());
+        }
+
+    }
+
+}
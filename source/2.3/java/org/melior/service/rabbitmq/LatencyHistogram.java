@@ -0,0 +1,155 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies with logarithmic buckets.  Each power of two
+ * is divided into 32 linear buckets, which bounds the error of a percentile estimate
+ * to about 3% of the value, while the histogram covers the full range of a long
+ * in under 2000 buckets.
+ * @author Melior
+ * @since 2.3
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 32;
+
+    private AtomicLongArray buckets;
+
+    private AtomicLong count;
+
+    private AtomicLong total;
+
+    private AtomicLong maximum;
+
+    /**
+     * Constructor.
+     */
+    LatencyHistogram() {
+
+        super();
+
+        buckets = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+        count = new AtomicLong();
+        total = new AtomicLong();
+        maximum = new AtomicLong();
+    }
+
+    /**
+     * Record value.
+     * @param value The value
+     */
+    void record(
+        final long value) {
+
+        long sample;
+
+        sample = Math.max(0, value);
+
+        buckets.incrementAndGet(index(sample));
+        count.incrementAndGet();
+        total.addAndGet(sample);
+        maximum.accumulateAndGet(sample, Math::max);
+    }
+
+    /**
+     * Get number of values recorded.
+     * @return The number of values
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get mean of values recorded.
+     * @return The mean
+     */
+    long getMean() {
+        return (count.get() == 0) ? 0 : total.get() / count.get();
+    }
+
+    /**
+     * Get maximum of values recorded.
+     * @return The maximum
+     */
+    long getMaximum() {
+        return maximum.get();
+    }
+
+    /**
+     * Get estimate of percentile of values recorded.
+     * @param percentile The percentile, from 0 to 100
+     * @return The upper bound of the bucket which contains the percentile
+     */
+    long getPercentile(
+        final double percentile) {
+
+        long threshold;
+        long cumulative;
+
+        if (count.get() == 0) {
+            return 0;
+        }
+
+        threshold = Math.max(1, (long) Math.ceil(count.get() * Math.max(0, Math.min(100, percentile)) / 100));
+        cumulative = 0;
+
+        for (int i = 0; i < buckets.length(); i++) {
+            cumulative += buckets.get(i);
+
+            if (cumulative >= threshold) {
+                return Math.min(upperBound(i), maximum.get());
+            }
+
+        }
+
+        return maximum.get();
+    }
+
+    /**
+     * Get index of bucket for value.
+     * @param value The value
+     * @return The index of the bucket
+     */
+    private static int index(
+        final long value) {
+
+        int shift;
+
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Get upper bound of bucket.
+     * @param index The index of the bucket
+     * @return The largest value which falls in the bucket
+     */
+    private static long upperBound(
+        final int index) {
+
+        int shift;
+
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+
+        shift = index / SUB_BUCKETS - 1;
+
+        return ((long) (index - shift * SUB_BUCKETS + 1) << shift) - 1;
+    }
+
+}
@@ -0,0 +1,463 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.melior.client.exception.RemotingException;
+import org.melior.client.rabbitmq.Destination;
+import org.melior.client.rabbitmq.RabbitMQClient;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.melior.service.core.ServiceState;
+import org.melior.service.exception.ExceptionType;
+import org.melior.util.number.Clamp;
+import org.springframework.amqp.rabbit.connection.Connection;
+
+/**
+ * Generates load against a RabbitMQ server and measures the end-to-end latency of
+ * the messages.  Messages are published with a {@code RabbitMQClient} at a fixed
+ * rate, and are consumed with a {@code RabbitMQListener}, so that the effect of
+ * the client and listener configuration, such as the number of connections, the
+ * number of consumers and the prefetch count, may be measured directly.
+ * <p>
+ * The publishers run open-loop: each message has a time at which it is scheduled
+ * to be sent, and the latency of the message is measured from that time rather than
+ * from the time at which it was actually sent.  A publisher which is held up by a
+ * slow server therefore does not hide the delay from the measurement, and the
+ * reported percentiles are corrected for coordinated omission.
+ * <p>
+ * The latency is measured with {@code System.nanoTime}, hence the publishers and
+ * the consumers must run in the same process.  The consumers record the latencies
+ * into a lock-free histogram, so that the measurement does not serialise them.  The messages that are scheduled
+ * during the warm-up period are sent and consumed, but are not measured.
+ * <p>
+ * The load generator runs within a service, because the listener only consumes
+ * while the service is active.  The report is written to the logs when the run
+ * completes, and is returned to the caller.  Use {@code LoadGeneratorService} to
+ * run the load generator from the command line.
+ * @author Melior
+ * @since 2.3
+ * @see LoadReport
+ */
+public class LoadGenerator {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private RabbitMQClient rabbitMQClient;
+
+    private RabbitMQListener<LoadMessage> rabbitMQListener;
+
+    private String queue;
+
+    private int rate = 1000;
+
+    private int payloadSize = 256;
+
+    private int duration = 30000;
+
+    private int warmUp = 5000;
+
+    private int publishers = 1;
+
+    private int completionTimeout = 30000;
+
+    /**
+     * Constructor.
+     * @param rabbitMQClient The RabbitMQ client with which to publish the messages
+     * @param rabbitMQListener The RabbitMQ listener with which to consume the messages
+     */
+    public LoadGenerator(
+        final RabbitMQClient rabbitMQClient,
+        final RabbitMQListener<LoadMessage> rabbitMQListener) {
+
+        super();
+
+        this.rabbitMQClient = rabbitMQClient;
+
+        this.rabbitMQListener = rabbitMQListener;
+    }
+
+    /**
+     * Generate load and measure the latency of the messages.  A temporary queue is
+     * declared for the run, unless a queue has been configured.  The consumers keep
+     * listening to the queue until the service stops.
+     * @return The load report
+     * @throws RemotingException if the service is not active, or if unable to generate the load
+     */
+    public LoadReport run() throws RemotingException {
+
+        String methodName = "run";
+        String queueName;
+        Connection connection;
+        Destination destination;
+        LatencyHistogram histogram;
+        AtomicLong received;
+        AtomicLong sent;
+        AtomicLong failed;
+        long interval;
+        long start;
+        long measureStart;
+        long end;
+        long total;
+        long expected;
+        long deadline;
+        CountDownLatch latch;
+        List<Thread> threads;
+        Thread thread;
+        char[] padding;
+        LoadReport report;
+
+        if (ServiceState.isActive() == false) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Load generator must run within an active service.");
+        }
+
+        queueName = (queue == null) ? "melior.load." + UUID.randomUUID() : queue;
+
+        if (queue == null) {
+
+            connection = rabbitMQClient.createConnection(queueName);
+
+            try {
+
+                connection.createChannel(false).queueDeclare(queueName, false, false, true, null);
+            }
+            catch (Exception exception) {
+                throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to declare queue: " + exception.getMessage(), exception);
+            }
+            finally {
+
+                connection.close();
+            }
+
+        }
+
+        histogram = new LatencyHistogram();
+        received = new AtomicLong();
+        sent = new AtomicLong();
+        failed = new AtomicLong();
+
+        rabbitMQListener.register(queueName).process(message -> {
+
+            if (message.isMeasured() == true) {
+
+                histogram.record(System.nanoTime() - message.getScheduledTime());
+
+                received.incrementAndGet();
+            }
+
+        }).start();
+
+        destination = rabbitMQClient.getDestination("", queueName);
+        padding = new char[payloadSize];
+        Arrays.fill(padding, 'x');
+
+        interval = TimeUnit.SECONDS.toNanos(publishers) / rate;
+        total = (long) rate * (warmUp + duration) / 1000 / publishers;
+        start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        measureStart = start + TimeUnit.MILLISECONDS.toNanos(warmUp);
+        end = measureStart + TimeUnit.MILLISECONDS.toNanos(duration);
+
+        logger.debug(methodName, "Generating ", rate, " messages per second to queue [", queueName, "] for ", duration, " ms.");
+
+        latch = new CountDownLatch(publishers);
+        threads = new ArrayList<Thread>(publishers);
+
+        for (int i = 0; i < publishers; i++) {
+            final long offset = i * interval / publishers;
+            final String body = new String(padding);
+
+            thread = new Thread(() -> {
+
+                try {
+                    publish(destination, start + offset, interval, total, measureStart, end, body, sent, failed);
+                }
+                finally {
+                    latch.countDown();
+                }
+
+            }, "LoadGenerator-" + i);
+            thread.setDaemon(true);
+            thread.start();
+
+            threads.add(thread);
+        }
+
+        try {
+            latch.await();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        expected = sent.get();
+        deadline = System.currentTimeMillis() + completionTimeout;
+
+        while ((received.get() < expected) && (System.currentTimeMillis() < deadline)
+            && (Thread.currentThread().isInterrupted() == false)) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        if (received.get() < expected) {
+            logger.warn(methodName, "Received ", received.get(), " of ", expected, " measured messages.");
+        }
+
+        report = new LoadReport(sent.get(), failed.get(), received.get(), end - measureStart, histogram);
+
+        logger.info(methodName, "Load report for queue [", queueName, "]: ", report);
+
+        return report;
+
+    }
+
+    /**
+     * Publish messages on a fixed schedule.  A message which falls behind its
+     * schedule is sent immediately, without skipping the messages that follow.
+     * @param destination The destination
+     * @param start The time at which the first message is scheduled, in nanoseconds
+     * @param interval The interval between messages, in nanoseconds
+     * @param total The number of messages to publish
+     * @param measureStart The time at which measurement starts, in nanoseconds
+     * @param end The time at which measurement ends, in nanoseconds
+     * @param padding The padding with which to make up the payload size
+     * @param sent The number of measured messages sent
+     * @param failed The number of measured messages which could not be sent
+     */
+    private void publish(
+        final Destination destination,
+        final long start,
+        final long interval,
+        final long total,
+        final long measureStart,
+        final long end,
+        final String padding,
+        final AtomicLong sent,
+        final AtomicLong failed) {
+
+        String methodName = "publish";
+        LoadMessage message;
+        long scheduledTime;
+        long delay;
+        boolean measured;
+
+        message = new LoadMessage();
+        message.setPadding(padding);
+
+        for (long i = 0; i < total; i++) {
+            scheduledTime = start + i * interval;
+            delay = scheduledTime - System.nanoTime();
+
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            if (Thread.currentThread().isInterrupted() == true) {
+                return;
+            }
+
+            measured = (scheduledTime >= measureStart) && (scheduledTime < end);
+
+            message.setSequence(i);
+            message.setScheduledTime(scheduledTime);
+            message.setMeasured(measured);
+
+            try {
+                destination.send(message);
+
+                if (measured == true) {
+                    sent.incrementAndGet();
+                }
+
+            }
+            catch (Exception exception) {
+
+                if (measured == true) {
+                    failed.incrementAndGet();
+                }
+
+                logger.debug(methodName, "Failed to send message: ", exception.getMessage());
+            }
+
+        }
+
+    }
+
+    /**
+     * Set queue to publish to and consume from.  A temporary queue is declared if no queue is set.
+     * @param queue The queue name
+     * @return The load generator
+     */
+    public LoadGenerator queue(
+        final String queue) {
+        this.queue = queue;
+
+        return this;
+    }
+
+    /**
+     * Set rate at which to publish messages.
+     * @param rate The rate, in messages per second
+     * @return The load generator
+     */
+    public LoadGenerator rate(
+        final int rate) {
+        this.rate = Clamp.clampInt(rate, 1, Integer.MAX_VALUE);
+
+        return this;
+    }
+
+    /**
+     * Set size of message payload.
+     * @param payloadSize The payload size, in characters
+     * @return The load generator
+     */
+    public LoadGenerator payloadSize(
+        final int payloadSize) {
+        this.payloadSize = Clamp.clampInt(payloadSize, 0, Integer.MAX_VALUE);
+
+        return this;
+    }
+
+    /**
+     * Set duration of measurement.
+     * @param duration The duration, specified in seconds
+     * @return The load generator
+     */
+    public LoadGenerator duration(
+        final int duration) {
+        this.duration = Clamp.clampInt(duration, 1, Integer.MAX_VALUE / 1000) * 1000;
+
+        return this;
+    }
+
+    /**
+     * Set duration of warm-up before measurement.
+     * @param warmUp The warm-up duration, specified in seconds
+     * @return The load generator
+     */
+    public LoadGenerator warmUp(
+        final int warmUp) {
+        this.warmUp = Clamp.clampInt(warmUp, 0, Integer.MAX_VALUE / 1000) * 1000;
+
+        return this;
+    }
+
+    /**
+     * Set number of publisher threads.
+     * @param publishers The number of publisher threads
+     * @return The load generator
+     */
+    public LoadGenerator publishers(
+        final int publishers) {
+        this.publishers = Clamp.clampInt(publishers, 1, Integer.MAX_VALUE);
+
+        return this;
+    }
+
+    /**
+     * Set time to wait for the consumers to receive the messages after publishing ends.
+     * @param completionTimeout The completion timeout, specified in seconds
+     * @return The load generator
+     */
+    public LoadGenerator completionTimeout(
+        final int completionTimeout) {
+        this.completionTimeout = Clamp.clampInt(completionTimeout, 0, Integer.MAX_VALUE / 1000) * 1000;
+
+        return this;
+    }
+
+    /**
+     * The message which is published by the load generator.
+     */
+    public static class LoadMessage {
+
+        private long sequence;
+
+        private long scheduledTime;
+
+        private boolean measured;
+
+        private String padding;
+
+        /**
+         * Get sequence number.
+         * @return The sequence number
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Set sequence number.
+         * @param sequence The sequence number
+         */
+        public void setSequence(
+            final long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Get time at which the message was scheduled to be sent.
+         * @return The scheduled time, in nanoseconds
+         */
+        public long getScheduledTime() {
+            return scheduledTime;
+        }
+
+        /**
+         * Set time at which the message was scheduled to be sent.
+         * @param scheduledTime The scheduled time, in nanoseconds
+         */
+        public void setScheduledTime(
+            final long scheduledTime) {
+            this.scheduledTime = scheduledTime;
+        }
+
+        /**
+         * Check whether the latency of the message is measured.
+         * @return true if the latency of the message is measured, false otherwise
+         */
+        public boolean isMeasured() {
+            return measured;
+        }
+
+        /**
+         * Set whether the latency of the message is measured.
+         * @param measured true if the latency of the message is measured, false otherwise
+         */
+        public void setMeasured(
+            final boolean measured) {
+            this.measured = measured;
+        }
+
+        /**
+         * Get padding.
+         * @return The padding
+         */
+        public String getPadding() {
+            return padding;
+        }
+
+        /**
+         * Set padding.
+         * @param padding The padding
+         */
+        public void setPadding(
+            final String padding) {
+            this.padding = padding;
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.concurrent.TimeUnit;
+import org.melior.client.rabbitmq.RabbitMQClient;
+import org.melior.client.rabbitmq.RabbitMQClientBuilder;
+import org.melior.context.service.ServiceContext;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.melior.service.core.ServiceState;
+import org.melior.service.exception.ApplicationException;
+import org.melior.service.rabbitmq.LoadGenerator.LoadMessage;
+import org.melior.util.thread.DaemonThread;
+import org.melior.util.thread.ThreadControl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * A service which runs the {@code LoadGenerator} from the command line.  The RabbitMQ
+ * client is configured from the {@code load.client} application properties, the RabbitMQ
+ * listener from the {@code load.listener} application properties, and the load generator
+ * from the {@code load.rate}, {@code load.payload-size}, {@code load.duration},
+ * {@code load.warm-up}, {@code load.publishers} and {@code load.queue} application properties.
+ * <p>
+ * The load is generated once the service is active.  The service exits when the run
+ * completes, with a non-zero exit code if the run failed or if any measured message
+ * could not be sent.
+ * @author Melior
+ * @since 2.3
+ * @see LoadGenerator
+ */
+@SpringBootApplication
+public class LoadGeneratorService extends RabbitMQService {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Bootstrap load generator.
+     * @param args The command line arguments
+     */
+    public static void main(
+        final String[] args) {
+
+        RabbitMQService.run(LoadGeneratorService.class, args);
+    }
+
+    /**
+     * Constructor.
+     * @param serviceContext The service context
+     * @param rabbitMQClient The RabbitMQ client with which to publish the messages
+     * @param rabbitMQListener The RabbitMQ listener with which to consume the messages
+     * @param rate The rate at which to publish messages, in messages per second
+     * @param payloadSize The payload size, in characters
+     * @param duration The duration of measurement, specified in seconds
+     * @param warmUp The duration of warm-up before measurement, specified in seconds
+     * @param publishers The number of publisher threads
+     * @param queue The queue name, or empty to declare a temporary queue
+     * @throws ApplicationException if an error occurs during the construction
+     */
+    public LoadGeneratorService(
+        final ServiceContext serviceContext,
+        final RabbitMQClient rabbitMQClient,
+        final RabbitMQListener<LoadMessage> rabbitMQListener,
+        @Value("${load.rate:1000}") final int rate,
+        @Value("${load.payload-size:256}") final int payloadSize,
+        @Value("${load.duration:30}") final int duration,
+        @Value("${load.warm-up:5}") final int warmUp,
+        @Value("${load.publishers:1}") final int publishers,
+        @Value("${load.queue:}") final String queue) throws ApplicationException {
+
+        super(serviceContext);
+
+        LoadGenerator loadGenerator;
+
+        loadGenerator = new LoadGenerator(rabbitMQClient, rabbitMQListener)
+            .queue(queue.isEmpty() ? null : queue)
+            .rate(rate)
+            .payloadSize(payloadSize)
+            .duration(duration)
+            .warmUp(warmUp)
+            .publishers(publishers);
+
+        DaemonThread.create(() -> generate(loadGenerator));
+    }
+
+    /**
+     * Wait for the service to become active, then generate the load and exit.
+     * @param loadGenerator The load generator
+     */
+    private void generate(
+        final LoadGenerator loadGenerator) {
+
+        String methodName = "generate";
+        LoadReport report;
+        int status;
+
+        while (ServiceState.isActive() == false) {
+            ThreadControl.wait(this, 100, TimeUnit.MILLISECONDS);
+        }
+
+        try {
+
+            report = loadGenerator.run();
+
+            status = (report.getFailed() == 0) ? 0 : 1;
+        }
+        catch (Exception exception) {
+
+            logger.error(methodName, "Failed to generate load: ", exception.getMessage());
+
+            status = 1;
+        }
+
+        System.exit(status);
+    }
+
+    /**
+     * Creates the RabbitMQ client and listener of the load generator.
+     */
+    @Configuration
+    public static class LoadGeneratorConfig {
+
+        /**
+         * Create RabbitMQ client with which to publish the messages.
+         * @return The RabbitMQ client
+         */
+        @Bean("loadclient")
+        @ConfigurationProperties("load.client")
+        public RabbitMQClient client() {
+            return RabbitMQClientBuilder.create().build();
+        }
+
+        /**
+         * Create RabbitMQ listener with which to consume the messages.
+         * @param rabbitMQClient The RabbitMQ client
+         * @return The RabbitMQ listener
+         */
+        @Bean("loadlistener")
+        @ConfigurationProperties("load.listener")
+        public RabbitMQListener<LoadMessage> listener(
+            final RabbitMQClient rabbitMQClient) {
+            return RabbitMQListenerBuilder.create(LoadMessage.class).client(rabbitMQClient).build();
+        }
+
+    }
+
+}
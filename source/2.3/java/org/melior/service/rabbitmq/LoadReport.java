@@ -0,0 +1,137 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a run of the {@code LoadGenerator}.  Latencies are measured from
+ * the time at which each message was scheduled to be sent, rather than the time at
+ * which it was actually sent, so that any time that a message spent waiting for the
+ * publisher to catch up with its schedule is included in its latency.
+ * @author Melior
+ * @since 2.3
+ * @see LoadGenerator
+ */
+public class LoadReport {
+
+    private long sent;
+
+    private long failed;
+
+    private long received;
+
+    private long duration;
+
+    private LatencyHistogram histogram;
+
+    /**
+     * Constructor.
+     * @param sent The number of messages sent during the measurement period
+     * @param failed The number of messages which could not be sent during the measurement period
+     * @param received The number of messages received during the measurement period
+     * @param duration The duration of the measurement period, in nanoseconds
+     * @param histogram The histogram of end-to-end latencies, in nanoseconds
+     */
+    LoadReport(
+        final long sent,
+        final long failed,
+        final long received,
+        final long duration,
+        final LatencyHistogram histogram) {
+
+        super();
+
+        this.sent = sent;
+
+        this.failed = failed;
+
+        this.received = received;
+
+        this.duration = duration;
+
+        this.histogram = histogram;
+    }
+
+    /**
+     * Get number of messages sent.
+     * @return The number of messages sent
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Get number of messages which could not be sent.
+     * @return The number of messages which could not be sent
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get number of messages received.
+     * @return The number of messages received
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * Get throughput of messages received.
+     * @return The throughput, in messages per second
+     */
+    public double getThroughput() {
+        return (duration == 0) ? 0 : received * 1e9 / duration;
+    }
+
+    /**
+     * Get mean end-to-end latency.
+     * @param timeUnit The time unit
+     * @return The mean latency
+     */
+    public long getMeanLatency(
+        final TimeUnit timeUnit) {
+        return timeUnit.convert(histogram.getMean(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get maximum end-to-end latency.
+     * @param timeUnit The time unit
+     * @return The maximum latency
+     */
+    public long getMaximumLatency(
+        final TimeUnit timeUnit) {
+        return timeUnit.convert(histogram.getMaximum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get percentile of end-to-end latency.
+     * @param percentile The percentile, from 0 to 100
+     * @param timeUnit The time unit
+     * @return The latency
+     */
+    public long getLatency(
+        final double percentile,
+        final TimeUnit timeUnit) {
+        return timeUnit.convert(histogram.getPercentile(percentile), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get summary of report.
+     * @return The summary
+     */
+    public String toString() {
+
+        return String.format("sent=%d failed=%d received=%d throughput=%.1f msg/s latency(us) mean=%d p50=%d p90=%d p99=%d p99.9=%d p99.99=%d max=%d",
+            sent, failed, received, getThroughput(), getMeanLatency(TimeUnit.MICROSECONDS),
+            getLatency(50, TimeUnit.MICROSECONDS), getLatency(90, TimeUnit.MICROSECONDS), getLatency(99, TimeUnit.MICROSECONDS),
+            getLatency(99.9, TimeUnit.MICROSECONDS), getLatency(99.99, TimeUnit.MICROSECONDS), getMaximumLatency(TimeUnit.MICROSECONDS));
+    }
+
+}
@@ -0,0 +1,43 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import org.melior.service.exception.ApplicationException;
+
+/**
+ * A store for the consumption progress of RabbitMQ stream queues.  The
+ * {@code RabbitMQListener} periodically writes the offset of the last
+ * message that was processed successfully to the store, and reads it
+ * back when consumption resumes from a {@code StreamOffset.stored()}
+ * position.
+ * @author Melior
+ * @since 2.3
+ * @see StreamOffset
+ */
+public interface OffsetStore {
+
+    /**
+     * Load offset.
+     * @param queueName The queue name
+     * @return The last stored offset, or null if no offset has been stored
+     * @throws ApplicationException if unable to load the offset
+     */
+    Long load(
+        final String queueName) throws ApplicationException;
+
+    /**
+     * Store offset.
+     * @param queueName The queue name
+     * @param offset The offset of the last message that was processed successfully
+     * @throws ApplicationException if unable to store the offset
+     */
+    void store(
+        final String queueName,
+        final long offset) throws ApplicationException;
+
+}
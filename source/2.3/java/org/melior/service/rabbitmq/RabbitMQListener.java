@@ -7,10 +7,20 @@
         Service Harness
 */
 package org.melior.service.rabbitmq;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.melior.client.exception.RemotingException;
+import org.melior.client.rabbitmq.QueueStatus;
 import org.melior.client.rabbitmq.RabbitMQClient;
 import org.melior.logging.core.Logger;
 import org.melior.logging.core.LoggerFactory;
@@ -18,12 +28,22 @@ import org.melior.service.core.ServiceState;
 import org.melior.util.thread.DaemonThread;
 import org.melior.util.thread.ThreadControl;
 import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BatchMessageListener;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.listener.AsyncConsumerStartedEvent;
+import org.springframework.amqp.rabbit.listener.ListenerContainerConsumerFailedEvent;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
-import org.springframework.util.backoff.ExponentialBackOff;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.StringUtils;
+import org.springframework.util.backoff.BackOffExecution;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 
 /**
  * Implements an easy to use, auto-configuring RabbitMQ listener which listens
@@ -31,12 +51,93 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * <p>
  * If a queue is configured with a {@code SingletonProcessor}, then any
  * new messages that arrive will be processed by the listener individually.
+ * If a queue is configured with a {@code BatchProcessor}, then any new
+ * messages that arrive will be processed by the listener in batches.
+ * If a queue is configured with an asynchronous processor, then the
+ * consumer thread is released as soon as the message has been handed
+ * to the processor, and the message is acknowledged when processing
+ * completes.
+ * <p>
+ * If a queue is configured with a reply processor, then each message is
+ * processed as a request, and the result is published to the reply queue
+ * of the request through a shared publisher channel with publisher confirms,
+ * on a dedicated connection which is closed when the listener stops.  The
+ * request is acknowledged once its reply has been confirmed.
+ * <p>
+ * If a queue is rate limited, then messages which arrive faster than the rate
+ * limit allows are deferred to a scheduler, which releases the consumer thread.
+ * <p>
+ * If the listener is configured with shared workers, then the consumers of all
+ * queues hand their messages to a shared worker pool, which processes the
+ * messages of the queues in proportion to the weights of the queues.  Each queue
+ * then has a single consumer thread, which only fetches messages and hands them
+ * off, so the number of threads which process messages is the size of the pool
+ * rather than the number of consumers of every queue.  Messages which are handed
+ * off are acknowledged by the listener once they have been processed, rather than
+ * by the container, and a failed message is rejected and requeued as before.
+ * <p>
+ * If the listener is configured with a {@code Topology}, then the topology is
+ * declared through the RabbitMQ client before consuming starts, and again when
+ * the consumers are recovered after a connection to the RabbitMQ server has
+ * been lost.  The client remembers what it has declared, so the topology is not
+ * declared again every time that the consumers start.
+ * <p>
+ * If a queue is a priority queue, then the queue is declared with its maximum
+ * priority before consuming starts, and the prefetch count is capped at the
+ * priority prefetch count.  A small prefetch count keeps a message in flight
+ * to each consumer while it processes the previous one, without buffering so
+ * many messages that priority ordering is lost.
+ * <p>
+ * If a queue has a single active consumer, then each instance of the service
+ * consumes from it with a single consumer.  A consumer which is waiting as a
+ * standby keeps its connection and channel open, and the listener warms up the
+ * client, the object mapper and the reply publisher while it waits, so that a
+ * promotion only costs the time the RabbitMQ server takes to switch consumers.
+ * When the management API is configured, the listener polls the active consumer
+ * of the queue, and records on the queue when this instance is promoted.
+ * <p>
+ * If a queue is sharded, then the listener declares the shard queues behind a
+ * consistent hash exchange, each with a single active consumer, and consumes from
+ * each shard with its own container and one consumer.  The RabbitMQ server delivers
+ * the messages of a shard to one instance of the service at a time, which keeps the
+ * messages with the same routing key in order.  When the management API is configured,
+ * the listener polls the status of the shards, and an instance which is active on more
+ * than its fair share of the shards hands the surplus over to the other instances, by
+ * restarting the consumers of those shards so that they wait behind the other instances.
+ * <p>
+ * A queue may also be consumed as a Reactive Streams {@code Publisher}, in
+ * which case the subscriber controls the flow of messages.
+ * <p>
+ * A queue may be consumed as a RabbitMQ stream queue, in which case a
+ * single consumer reads the stream from the configured {@code StreamOffset}.
+ * <p>
+ * When the service is suspended, the listener cancels its consumers while the
+ * messages already in flight are processed and acknowledged, and subscribes again
+ * as soon as the service is resumed.  When the service shuts down, the listener
+ * drains the messages in flight in the same way, for at most the drain timeout.
+ * <p>
+ * The listener watches the health of its consumers.  When a connection is lost,
+ * or a consumer is cancelled or its channel shut down, the consumer is recovered
+ * after a short, jittered and increasing interval, and the time taken to recover
+ * is recorded on the queue.  Failures are taken from the consumer failure events of
+ * the container of each queue, so the closing of a pooled connection which the queue
+ * does not consume on is not counted against it.
+ * <p>
+ * The number of consumers, the prefetch count and the number of shared workers
+ * are watched while the listener is running, and changes are applied without a
+ * restart.  A change in the number of consumers is applied to the running consumers,
+ * while a change in the prefetch count drains the consumers and subscribes again.
+ * When the shared workers are switched on or off, the consumers of each queue are
+ * drained and subscribe again with a processor which does or does not hand off to
+ * the workers.  The properties are exported over JMX when JMX is enabled in the
+ * application, for example with {@code spring.jmx.enabled=true}.
  * <p>
  * The listener may be configured with multiple threads to speed up processing.
  * @author Melior
  * @since 2.3
  * @see RabbitMQQueue
  */
+@ManagedResource
 public class RabbitMQListener<T> extends RabbitMQListenerConfig {
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -49,6 +150,16 @@ public class RabbitMQListener<T> extends RabbitMQListenerConfig {
 
     private Map<String, RabbitMQQueue<T>> queueMap;
 
+    private ScheduledExecutorService scheduler;
+
+    private WorkerPool workerPool;
+
+    private ReplyPublisher replyPublisher;
+
+    private boolean isReplyPublisherClosed;
+
+    private AtomicInteger listeningQueues;
+
     /**
      * Constructor.
      * @param entityClass The entity class
@@ -68,6 +179,8 @@ public class RabbitMQListener<T> extends RabbitMQListenerConfig {
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
         queueMap = new HashMap<String, RabbitMQQueue<T>>();
+
+        listeningQueues = new AtomicInteger();
     }
 
     /**
@@ -138,11 +251,45 @@ public class RabbitMQListener<T> extends RabbitMQListenerConfig {
     void start(
         final RabbitMQQueue<T> queue) throws RemotingException {
 
-        DaemonThread.create(() -> listen(queue));
+        listeningQueues.incrementAndGet();
+
+        DaemonThread.create(() -> {
+            listen(queue);
+            stopped();
+        });
+    }
+
+    /**
+     * Record that a queue has stopped listening.  The reply publisher is closed
+     * once the last queue has stopped, when no more replies can be published, and
+     * is not created again afterwards.
+     */
+    private void stopped() {
+
+        ReplyPublisher publisher;
+
+        if (listeningQueues.decrementAndGet() > 0) {
+            return;
+        }
+
+        synchronized (this) {
+
+            publisher = replyPublisher;
+
+            replyPublisher = null;
+
+            isReplyPublisherClosed = true;
+        }
+
+        if (publisher != null) {
+            publisher.close();
+        }
+
     }
 
     /**
-     * Listen to queue and process new arrivals.
+     * Listen to queue and process new arrivals.  A sharded queue is consumed with
+     * one container for each shard.
      * @param queue The queue
      */
     private void listen(
@@ -150,7 +297,7 @@ public class RabbitMQListener<T> extends RabbitMQListenerConfig {
 
         String methodName = "listen";
         MessageListener processor;
-        SimpleMessageListenerContainer container;
+        List<SimpleMessageListenerContainer> containers = null;
 
         logger.debug(methodName, "Started listening to queue [", queue.getName(), "].");
 
@@ -165,29 +312,45 @@ public class RabbitMQListener<T> extends RabbitMQListenerConfig {
 
                 try {
 
-                    processor = record -> process(queue, record);
+                    processor = createProcessor(queue);
+
+                    declare(queue);
+
+                    containers = new ArrayList<SimpleMessageListenerContainer>();
+
+                    for (String queueName : queue.getQueueNames()) {
+                        containers.add(createContainer(queue, queueName, processor));
+                    }
+
+                    for (SimpleMessageListenerContainer container : containers) {
+                        container.start();
+                    }
 
-                    container = new SimpleMessageListenerContainer();
-                    container.setQueueNames(queue.getName());
-                    container.setMessageListener(processor);
-                    container.setConnectionFactory(rabbitMQClient.getConnectionFactory());
-                    container.setMissingQueuesFatal(false);
-                    container.setMaxConcurrentConsumers(getConsumers());
-                    container.setConcurrentConsumers(getConsumers());
-                    container.setStartConsumerMinInterval(1000);
-                    container.setPrefetchCount(getPrefetch());
-                    container.setReceiveTimeout(getRequestTimeout());
-                    container.setRecoveryBackOff(new ExponentialBackOff(getBackoffPeriod(), getBackoffMultiplier()));
-                    container.start();
-
-                    return;
                 }
                 catch (Throwable exception) {
                     logger.error(methodName, "Failed to start listening to queue: ", exception.getMessage(), exception);
 
+                    if (containers != null) {
+                        stop(queue, containers);
+                    }
+
                     break;
                 }
 
+                if (((queue.isSharded() == true) || (queue.isSingleActiveConsumer() == true))
+                    && (StringUtils.hasLength(rabbitMQClient.getManagementUrl()) == true)) {
+                    DaemonThread.create(() -> observe(queue));
+                }
+                else if (queue.isSharded() == true) {
+                    logger.warn(methodName, "Management API is not configured, so the shards of queue [", queue.getName(), "] are not spread over the instances of the service.");
+                }
+                else if (queue.isSingleActiveConsumer() == true) {
+                    logger.warn(methodName, "Management API is not configured, so the promotions of queue [", queue.getName(), "] are not observed.");
+                }
+
+                supervise(queue, containers);
+
+                return;
             }
 
             ThreadControl.wait(queue, getConnectionTimeout(), TimeUnit.MILLISECONDS);
@@ -196,30 +359,1033 @@ public class RabbitMQListener<T> extends RabbitMQListenerConfig {
     }
 
     /**
-     * Process record.
+     * Create container which consumes from queue.  A queue with a single active consumer, or
+     * a shard of a sharded queue, is consumed with a consumer tag which identifies this instance
+     * of the service, so that its status in the management API can be matched.
      * @param queue The queue
-     * @param record The record
-     * @throws RemotingException if unable to process the record
+     * @param queueName The name of the queue, or of the shard queue if the queue is sharded
+     * @param processor The processor
+     * @return The container, which has not been started
+     * @throws RemotingException if unable to get the connection factory for the queue
      */
-    private void process(
+    private SimpleMessageListenerContainer createContainer(
         final RabbitMQQueue<T> queue,
-        final Message message) throws RuntimeException {
+        final String queueName,
+        final MessageListener processor) throws RemotingException {
 
-        T message1;
+        int consumers;
+        SimpleMessageListenerContainer container;
 
-        queue.getTotalMessages().increment();
+        consumers = getConsumers(queue);
+
+        container = new SimpleMessageListenerContainer();
+        container.setQueueNames(queueName);
+        container.setMessageListener(processor);
+        container.setConnectionFactory(rabbitMQClient.getConnectionFactory(queueName));
+        container.setMissingQueuesFatal(false);
+        container.setConsumerArguments(queue.getConsumerArguments());
+        container.setAcknowledgeMode((processor instanceof ChannelAwareMessageListener) ? AcknowledgeMode.MANUAL : AcknowledgeMode.AUTO);
+        container.setMaxConcurrentConsumers(consumers);
+        container.setConcurrentConsumers(consumers);
+        container.setStartConsumerMinInterval(1000);
+        container.setPrefetchCount(getPrefetch(queue));
+        container.setConsumerBatchEnabled(queue.getBatchProcessor() != null);
+        container.setDeBatchingEnabled(queue.getBatchProcessor() != null);
+        container.setBatchSize(getBatchSize());
+        container.setReceiveTimeout(getRequestTimeout());
+        container.setRecoveryBackOff(getRecoveryBackOff());
+        container.setApplicationEventPublisher(event -> monitor(queue, event));
+        container.setShutdownTimeout(getDrainTimeout());
+
+        if ((queue.isSingleActiveConsumer() == true) || (queue.isSharded() == true)) {
+            container.setConsumerTagStrategy(tagQueueName -> queue.getConsumerTag(tagQueueName));
+        }
+
+        return container;
+    }
+
+    /**
+     * Create processor for the container of queue.  Messages are handed off to the shared
+     * worker pool or the rate limiter, or processed asynchronously, with manual acknowledgement.
+     * Otherwise messages are processed on the consumer thread and acknowledged by the container.
+     * @param queue The queue
+     * @return The processor
+     */
+    private MessageListener createProcessor(
+        final RabbitMQQueue<T> queue) {
+
+        MessageListener processor;
+
+        if (queue.getBatchProcessor() != null) {
+            processor = (BatchMessageListener) records -> {
+                queue.track(records);
+                throttle(queue, records);
+                process(queue, records);
+            };
+        }
+        else if ((queue.getRateLimiter() != null) || (getWorkers() > 0)) {
+            processor = (ChannelAwareMessageListener) (record, channel) -> {
+                queue.dispatched();
+                queue.track(record);
+                processThrottled(queue, record, channel);
+                awaitDrain(queue);
+            };
+        }
+        else if (queue.getAsyncProcessor() != null) {
+            processor = (ChannelAwareMessageListener) (record, channel) -> {
+                queue.dispatched();
+                queue.track(record);
+                processAsync(queue, record, channel);
+                awaitDrain(queue);
+            };
+        }
+        else {
+            processor = record -> {
+                queue.track(record);
+                process(queue, record);
+            };
+        }
+
+        return processor;
+    }
+
+    /**
+     * Supervise containers while the service is active.  The consumers are cancelled
+     * when the service is suspended, and are started again when the service is resumed.
+     * The node which leads the queue is located again before a container is started, in
+     * case the leadership has moved.  The containers are drained and stopped when the
+     * service shuts down.  When the shared workers are switched on or off, the containers
+     * are drained and their processor is replaced, and the containers are started again
+     * with the new processor.  When a shard is handed over, its container is drained and
+     * started again, so that its consumer waits behind the consumers of the other instances
+     * of the service.
+     * @param queue The queue
+     * @param containers The containers
+     */
+    private void supervise(
+        final RabbitMQQueue<T> queue,
+        final List<SimpleMessageListenerContainer> containers) {
+
+        String methodName = "supervise";
+        int consumers = getConsumers(queue);
+        int prefetch = getPrefetch(queue);
+        boolean handOff = getWorkers() > 0;
+        MessageListener processor;
+        BackOffExecution backOff = null;
+        long retryAt = 0;
+
+        while (ServiceState.isActive() == true) {
+
+            if ((isRunning(containers) == true) && (getConsumers(queue) != consumers)) {
+                consumers = getConsumers(queue);
+
+                for (SimpleMessageListenerContainer container : containers) {
+
+                    if (consumers > container.getActiveConsumerCount()) {
+                        container.setMaxConcurrentConsumers(consumers);
+                        container.setConcurrentConsumers(consumers);
+                    }
+                    else {
+                        container.setConcurrentConsumers(consumers);
+                        container.setMaxConcurrentConsumers(consumers);
+                    }
+
+                }
+
+                logger.debug(methodName, "Changed number of consumers of queue [", queue.getName(), "] to ", consumers, ".");
+            }
+
+            if (getPrefetch(queue) != prefetch) {
+                prefetch = getPrefetch(queue);
+
+                for (SimpleMessageListenerContainer container : containers) {
+                    container.setPrefetchCount(prefetch);
+                }
+
+                if (isRunning(containers) == true) {
+                    drain(queue, containers);
+                }
+
+                logger.debug(methodName, "Changed prefetch count of queue [", queue.getName(), "] to ", prefetch, ".");
+            }
+
+            if ((getWorkers() > 0) != handOff) {
+                handOff = getWorkers() > 0;
+
+                if (isRunning(containers) == true) {
+                    drain(queue, containers);
+                }
+
+                processor = createProcessor(queue);
+
+                for (SimpleMessageListenerContainer container : containers) {
+                    container.setMessageListener(processor);
+                    container.setAcknowledgeMode((processor instanceof ChannelAwareMessageListener) ? AcknowledgeMode.MANUAL : AcknowledgeMode.AUTO);
+                }
+
+                logger.debug(methodName, "Switched shared workers of queue [", queue.getName(), "] ", (handOff == true) ? "on" : "off", ".");
+            }
+
+            resizeWorkerPool();
+
+            queue.flush(false);
+
+            for (SimpleMessageListenerContainer container : containers) {
+
+                if ((queue.takeYield(container.getQueueNames()[0]) == true) && (container.isRunning() == true)
+                    && (ServiceState.isSuspended() == false)) {
+                    handOver(queue, container);
+                }
+
+            }
+
+            if ((ServiceState.isSuspended() == true) && (isRunning(containers) == true)) {
+                drain(queue, containers);
+
+                logger.debug(methodName, "Suspended listening to queue [", queue.getName(), "].");
+            }
+            else if ((ServiceState.isSuspended() == false) && (isStopped(containers) == true)
+                && (System.currentTimeMillis() >= retryAt)) {
+
+                try {
+
+                    declare(queue);
+
+                    queue.resume();
+
+                    for (SimpleMessageListenerContainer container : containers) {
+
+                        if (container.isRunning() == false) {
+                            container.setConnectionFactory(rabbitMQClient.getConnectionFactory(container.getQueueNames()[0]));
+                            container.setConsumerArguments(queue.getConsumerArguments());
+                            container.start();
+                        }
+
+                    }
+
+                    backOff = null;
+
+                    logger.debug(methodName, "Resumed listening to queue [", queue.getName(), "].");
+                }
+                catch (Throwable exception) {
+                    logger.error(methodName, "Failed to resume listening to queue: ", exception.getMessage(), exception);
+
+                    backOff = (backOff == null) ? getRecoveryBackOff().start() : backOff;
+                    retryAt = System.currentTimeMillis() + backOff.nextBackOff();
+                }
+
+            }
+
+            ThreadControl.wait(queue, 10, TimeUnit.MILLISECONDS);
+        }
+
+        if (isRunning(containers) == true) {
+            drain(queue, containers);
+        }
+
+        queue.flush(true);
+
+        logger.debug(methodName, "Stopped listening to queue [", queue.getName(), "].");
+    }
+
+    /**
+     * Check whether any of the containers is running.
+     * @param containers The containers
+     * @return true if any of the containers is running, false otherwise
+     */
+    private boolean isRunning(
+        final List<SimpleMessageListenerContainer> containers) {
+
+        for (SimpleMessageListenerContainer container : containers) {
+
+            if (container.isRunning() == true) {
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    /**
+     * Check whether any of the containers is stopped.
+     * @param containers The containers
+     * @return true if any of the containers is stopped, false otherwise
+     */
+    private boolean isStopped(
+        final List<SimpleMessageListenerContainer> containers) {
+
+        for (SimpleMessageListenerContainer container : containers) {
+
+            if (container.isRunning() == false) {
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    /**
+     * Hand over shard to the consumer of another instance of the service.  The container
+     * of the shard is drained and started again, which registers its consumer behind the
+     * consumers that are waiting on the shard, so that the RabbitMQ server activates one of
+     * them instead.  The messages in flight on the other shards are allowed to complete
+     * while the shard is drained.
+     * @param queue The queue
+     * @param container The container of the shard
+     */
+    private void handOver(
+        final RabbitMQQueue<T> queue,
+        final SimpleMessageListenerContainer container) {
+
+        String methodName = "handOver";
+
+        drain(queue, Collections.singletonList(container));
+
+        queue.resume();
 
         try {
 
-            message1 = objectMapper.readValue(new String(message.getBody()), entityClass);
+            container.start();
 
-            queue.getProcessor().process(message1);
+            logger.debug(methodName, "Handed over shard [", container.getQueueNames()[0], "] of queue [", queue.getName(), "].");
         }
         catch (Throwable exception) {
+            logger.error(methodName, "Failed to restart consumer of shard [", container.getQueueNames()[0], "]: ", exception.getMessage(), exception);
+        }
 
-            queue.getFailedMessages().increment();
+    }
 
-            throw new AmqpException(exception.getMessage());
+    /**
+     * Observe queue with a single active consumer, or the shards of a sharded queue, through the
+     * management API.  The active consumer of each queue is recorded on the queue, to detect when
+     * this instance of the service is promoted from standby to active.  The observer also hands over
+     * the shards that this instance is active on beyond its fair share.  The number of instances
+     * is taken from the number of consumers of the shards, as each instance consumes from every
+     * shard with one consumer, and the fair share is the number of shards divided by the number
+     * of instances, rounded up.  Once shards have been handed over, the observer waits a few
+     * poll intervals for the RabbitMQ server to settle before it rebalances again.
+     * @param queue The queue
+     */
+    private void observe(
+        final RabbitMQQueue<T> queue) {
+
+        String methodName = "observe";
+        String[] queueNames = queue.getQueueNames();
+        List<String> activeShards;
+        int instances;
+        int fairShare;
+        QueueStatus status;
+        long settledAt = 0;
+
+        while (ServiceState.isActive() == true) {
+
+            ThreadControl.wait(queue, getManagementPollInterval(), TimeUnit.MILLISECONDS);
+
+            if (ServiceState.isSuspended() == true) {
+                continue;
+            }
+
+            activeShards = new ArrayList<String>();
+            instances = 0;
+
+            try {
+
+                for (String queueName : queueNames) {
+                    status = rabbitMQClient.getQueueStatus(queueName);
+
+                    instances = Math.max(instances, status.getConsumers());
+
+                    queue.observed(queueName, status.getActiveConsumerTag(), System.currentTimeMillis());
+
+                    if (queue.getConsumerTag(queueName).equals(status.getActiveConsumerTag()) == true) {
+                        activeShards.add(queueName);
+                    }
+
+                }
+
+            }
+            catch (RemotingException exception) {
+                logger.warn(methodName, "Failed to observe queue [", queue.getName(), "]: ", exception.getMessage());
+
+                continue;
+            }
+
+            fairShare = (instances == 0) ? queueNames.length : (queueNames.length + instances - 1) / instances;
+
+            if ((queue.isSharded() == true) && (activeShards.size() > fairShare)
+                && (System.currentTimeMillis() >= settledAt)) {
+
+                for (String shardName : activeShards.subList(fairShare, activeShards.size())) {
+                    queue.yieldShard(shardName);
+                }
+
+                settledAt = System.currentTimeMillis() + 5L * getManagementPollInterval();
+
+                logger.debug(methodName, "Handing over ", activeShards.size() - fairShare, " shards of queue [", queue.getName(), "] to ",
+                    instances - 1, " other instances.");
+            }
+
+        }
+
+    }
+
+    /**
+     * Monitor events published by container.  Consumer failures and restarts are recorded
+     * on the queue, to measure the time taken to recover consumers.
+     * @param queue The queue
+     * @param event The event
+     */
+    private void monitor(
+        final RabbitMQQueue<T> queue,
+        final Object event) {
+
+        String methodName = "monitor";
+
+        if (event instanceof ListenerContainerConsumerFailedEvent) {
+
+            queue.consumerFailed();
+
+            if (queue.isStream() == true) {
+                resumeStream(queue, (SimpleMessageListenerContainer) ((ListenerContainerConsumerFailedEvent) event).getSource());
+            }
+
+            logger.warn(methodName, "Consumer of queue [", queue.getName(), "] failed: ", ((ListenerContainerConsumerFailedEvent) event).getReason());
+        }
+        else if (event instanceof AsyncConsumerStartedEvent) {
+
+            queue.consumerStarted();
+
+            if (queue.isSingleActiveConsumer() == true) {
+                DaemonThread.create(() -> warmUp(queue));
+            }
+
+        }
+
+    }
+
+    /**
+     * Resume stream queue after the last processed offset when the container restarts
+     * a failed consumer, instead of replaying the stream from the initial offset.  The
+     * offset is checkpointed, so that it survives if the restart fails as well.
+     * @param queue The queue
+     * @param container The container
+     */
+    private void resumeStream(
+        final RabbitMQQueue<T> queue,
+        final SimpleMessageListenerContainer container) {
+
+        String methodName = "resumeStream";
+
+        queue.checkpoint();
+
+        try {
+
+            container.setConsumerArguments(queue.getConsumerArguments());
+        }
+        catch (Throwable exception) {
+            logger.warn(methodName, "Failed to resolve offset of stream queue [", queue.getName(), "]: ", exception.getMessage());
+        }
+
+    }
+
+    /**
+     * Warm up standby consumer of queue with a single active consumer.  Prepares the
+     * connections of the client, the object mapper and the reply publisher, so that
+     * the standby is ready to process messages as soon as it is promoted.  A failure
+     * to warm up is logged, but does not prevent the standby from being promoted.
+     * @param queue The queue
+     */
+    private void warmUp(
+        final RabbitMQQueue<T> queue) {
+
+        String methodName = "warmUp";
+
+        try {
+
+            if (objectMapper.canDeserialize(objectMapper.constructType(entityClass)) == false) {
+                logger.warn(methodName, "Unable to prime object mapper for type [", entityClass.getName(), "].");
+            }
+
+            if (queue.getReplyProcessor() != null) {
+                getReplyPublisher();
+            }
+
+            rabbitMQClient.warmUp();
+
+            logger.debug(methodName, "Standby consumer of queue [", queue.getName(), "] is ready.");
+        }
+        catch (Exception exception) {
+            logger.warn(methodName, "Failed to warm up standby consumer of queue [", queue.getName(), "]: ", exception.getMessage());
+        }
+
+    }
+
+    /**
+     * Get back-off policy for recovering consumers.  The first attempt is made after a tenth of
+     * the backoff period, and the interval grows up to the backoff limit, or the backoff period
+     * if no limit is configured.
+     * @return The back-off policy
+     */
+    private RecoveryBackOff getRecoveryBackOff() {
+
+        return new RecoveryBackOff(getBackoffPeriod() / 10, (getBackoffLimit() > 0) ? getBackoffLimit() : getBackoffPeriod());
+    }
+
+    /**
+     * Drain queue and stop containers.  The messages which are in flight are allowed to
+     * complete and be acknowledged before the consumers are cancelled, and the containers
+     * then process any messages that they have already fetched, for at most the drain timeout.
+     * The offset of a stream queue is checkpointed once the containers have stopped.
+     * @param queue The queue
+     * @param containers The containers
+     */
+    private void drain(
+        final RabbitMQQueue<T> queue,
+        final List<SimpleMessageListenerContainer> containers) {
+
+        String methodName = "drain";
+
+        queue.drain(System.currentTimeMillis() + getDrainTimeout());
+
+        awaitDrain(queue);
+
+        stop(queue, containers);
+
+        queue.checkpoint();
+
+        if (queue.getInFlightMessages() > 0) {
+            logger.warn(methodName, "Queue [", queue.getName(), "] stopped with ", queue.getInFlightMessages(), " messages in flight.");
+        }
+
+    }
+
+    /**
+     * Stop containers.  A failure to stop a container is logged, and the other containers are still stopped.
+     * @param queue The queue
+     * @param containers The containers
+     */
+    private void stop(
+        final RabbitMQQueue<T> queue,
+        final List<SimpleMessageListenerContainer> containers) {
+
+        String methodName = "stop";
+
+        for (SimpleMessageListenerContainer container : containers) {
+
+            try {
+
+                if (container.isRunning() == true) {
+                    container.stop();
+                }
+
+            }
+            catch (Throwable exception) {
+                logger.error(methodName, "Failed to stop listening to queue [", queue.getName(), "]: ", exception.getMessage(), exception);
+            }
+
+        }
+
+    }
+
+    /**
+     * Wait for the messages in flight to be acknowledged, if the queue is being drained.
+     * The wait ends at the drain deadline of the queue.
+     * @param queue The queue
+     */
+    private void awaitDrain(
+        final RabbitMQQueue<T> queue) {
+
+        while ((queue.isDraining() == true) && (queue.getInFlightMessages() > 0)
+            && (System.currentTimeMillis() < queue.getDrainDeadline())) {
+
+            ThreadControl.wait(queue, 1, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+    /**
+     * Declare topology of listener and queue with its queue arguments.  A failure to declare is logged, but
+     * does not prevent consuming from the queue, as the queue may already have been declared
+     * with different arguments.
+     * @param queue The queue
+     */
+    private void declare(
+        final RabbitMQQueue<T> queue) {
+
+        String methodName = "declare";
+
+        try {
+
+            rabbitMQClient.declare(getTopology());
+            rabbitMQClient.declare(queue.getTopology());
+        }
+        catch (Exception exception) {
+            logger.warn(methodName, "Failed to declare topology of queue [", queue.getName(), "]: ", exception.getMessage());
+        }
+
+    }
+
+    /**
+     * Get number of consumers for queue.  A queue whose messages are handed to the shared
+     * worker pool needs only one consumer, because its consumer does not process messages.
+     * A queue with a single active consumer, and each shard of a sharded queue, is consumed
+     * with one consumer, as only one consumer of the queue receives messages at a time.
+     * @param queue The queue
+     * @return The number of consumers
+     */
+    private int getConsumers(
+        final RabbitMQQueue<T> queue) {
+
+        return ((queue.isStream() == true) || (queue.isSingleActiveConsumer() == true) || (queue.isSharded() == true)
+            || ((getWorkers() > 0) && (queue.getBatchProcessor() == null))) ? 1 : getConsumers();
+    }
+
+    /**
+     * Reconfigure listener while it is running.  The changes are applied by the
+     * supervisor of each queue within milliseconds.
+     * @param consumers The number of consumers
+     * @param prefetch The prefetch count
+     * @param workers The number of shared workers
+     */
+    @ManagedOperation
+    public void reconfigure(
+        final int consumers,
+        final int prefetch,
+        final int workers) {
+
+        setConsumers(consumers);
+        setPrefetch(prefetch);
+        setWorkers(workers);
+    }
+
+    /**
+     * Resize shared worker pool to the configured number of workers, if the pool has been created.
+     */
+    private synchronized void resizeWorkerPool() {
+
+        if ((workerPool != null) && (getWorkers() > 0) && (workerPool.getSize() != getWorkers())) {
+            workerPool.resize(getWorkers());
+        }
+
+    }
+
+    /**
+     * Get prefetch count for queue.
+     * @param queue The queue
+     * @return The prefetch count
+     */
+    int getPrefetch(
+        final RabbitMQQueue<T> queue) {
+
+        return (queue.isPriority() == true) ? Math.min(getPrefetch(), getPriorityPrefetch()) : getPrefetch();
+    }
+
+    /**
+     * Create a dedicated connection for consuming from queue, which is not pooled.
+     * @param queue The queue
+     * @return The connection
+     * @throws RemotingException if unable to create the connection
+     */
+    Connection createConnection(
+        final RabbitMQQueue<T> queue) throws RemotingException {
+
+        return rabbitMQClient.createConnection(queue.getName());
+    }
+
+    /**
+     * Deserialize record.
+     * @param body The body of the record
+     * @return The message
+     * @throws IOException if unable to deserialize the record
+     */
+    T deserialize(
+        final byte[] body) throws IOException {
+
+        return objectMapper.readValue(new String(body), entityClass);
+    }
+
+    /**
+     * Process record.
+     * @param queue The queue
+     * @param record The record
+     * @throws RemotingException if unable to process the record
+     */
+    private void process(
+        final RabbitMQQueue<T> queue,
+        final Message message) throws RuntimeException {
+
+        T message1;
+
+        if (queue.getReplyProcessor() != null) {
+            processReply(queue, message);
+
+            return;
+        }
+
+        queue.getTotalMessages().increment();
+
+        try {
+
+            message1 = objectMapper.readValue(new String(message.getBody()), entityClass);
+
+            queue.received(message.getMessageProperties());
+            queue.getProcessor().process(message1);
+        }
+        catch (Throwable exception) {
+
+            queue.getFailedMessages().increment();
+            queue.fail(message);
+
+            throw new AmqpException(exception.getMessage());
+        }
+
+        queue.commit(message);
+    }
+
+    /**
+     * Process request record and publish the reply.  A request without a reply queue
+     * is processed, but no reply is published.
+     * @param queue The queue
+     * @param message The request record
+     * @throws RuntimeException if unable to process the request or publish the reply
+     */
+    private void processReply(
+        final RabbitMQQueue<T> queue,
+        final Message message) throws RuntimeException {
+
+        T request;
+        Object reply;
+        String replyTo;
+
+        queue.getTotalMessages().increment();
+
+        try {
+
+            request = objectMapper.readValue(new String(message.getBody()), entityClass);
+
+            queue.received(message.getMessageProperties());
+            reply = queue.getReplyProcessor().apply(request);
+
+            replyTo = message.getMessageProperties().getReplyTo();
+
+            if (replyTo != null) {
+                getReplyPublisher().publish(replyTo, message.getMessageProperties().getCorrelationId(),
+                    ((reply instanceof String) ? (String) reply : objectMapper.writeValueAsString(reply)).getBytes(StandardCharsets.UTF_8));
+            }
+
+        }
+        catch (Throwable exception) {
+
+            queue.getFailedMessages().increment();
+            queue.fail(message);
+
+            throw new AmqpException(exception.getMessage());
+        }
+
+        queue.commit(message);
+    }
+
+    /**
+     * Process batch of records.
+     * @param queue The queue
+     * @param messages The records
+     * @throws RuntimeException if unable to process the records
+     */
+    private void process(
+        final RabbitMQQueue<T> queue,
+        final List<Message> messages) throws RuntimeException {
+
+        List<T> messageList;
+
+        for (int i = 0; i < messages.size(); i++) {
+            queue.getTotalMessages().increment();
+        }
+
+        messageList = new ArrayList<T>(messages.size());
+
+        try {
+
+            for (Message message : messages) {
+                messageList.add(objectMapper.readValue(new String(message.getBody()), entityClass));
+            }
+
+            queue.getBatchProcessor().process(messageList);
+        }
+        catch (Throwable exception) {
+
+            for (int i = 0; i < messages.size(); i++) {
+                queue.getFailedMessages().increment();
+            }
+
+            queue.fail(messages);
+
+            throw new AmqpException(exception.getMessage());
+        }
+
+        queue.commit(messages);
+    }
+
+    /**
+     * Process record asynchronously.  The record is acknowledged when the
+     * completion stage that is returned by the processor completes.
+     * @param queue The queue
+     * @param message The record
+     * @param channel The channel on which the record was delivered
+     */
+    private void processAsync(
+        final RabbitMQQueue<T> queue,
+        final Message message,
+        final Channel channel) {
+
+        long deliveryTag;
+        T message1;
+        CompletionStage<?> completionStage;
+
+        queue.getTotalMessages().increment();
+
+        deliveryTag = message.getMessageProperties().getDeliveryTag();
+
+        try {
+
+            message1 = objectMapper.readValue(new String(message.getBody()), entityClass);
+
+            queue.received(message.getMessageProperties());
+            completionStage = queue.getAsyncProcessor().apply(message1);
+        }
+        catch (Throwable exception) {
+
+            queue.getFailedMessages().increment();
+            queue.fail(message);
+
+            acknowledge(queue, channel, deliveryTag, false);
+
+            return;
+        }
+
+        if (completionStage == null) {
+
+            queue.commit(message);
+
+            acknowledge(queue, channel, deliveryTag, true);
+
+            return;
+        }
+
+        completionStage.whenComplete((result, exception) -> {
+
+            if (exception != null) {
+
+                queue.getFailedMessages().increment();
+                queue.fail(message);
+            }
+            else {
+
+                queue.commit(message);
+            }
+
+            acknowledge(queue, channel, deliveryTag, exception == null);
+        });
+
+    }
+
+    /**
+     * Process record within the rate limit of the queue.  A record which arrives faster
+     * than the rate limit allows is deferred to the scheduler, and the consumer thread
+     * is released.  The record remains unacknowledged until it has been processed,
+     * which withholds credit from the RabbitMQ server in the meantime.
+     * @param queue The queue
+     * @param message The record
+     * @param channel The channel on which the record was delivered
+     */
+    private void processThrottled(
+        final RabbitMQQueue<T> queue,
+        final Message message,
+        final Channel channel) {
+
+        long delay;
+
+        delay = (queue.getRateLimiter() == null) ? 0 : queue.getRateLimiter().reserve(message.getBody().length);
+
+        if (delay <= 0) {
+            execute(queue, message, channel);
+
+            return;
+        }
+
+        queue.throttled(delay);
+
+        getScheduler().schedule(() -> execute(queue, message, channel), delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Hold batch of records on the consumer thread until the rate limit of the queue allows it.
+     * The batch reserves the tokens for all its records and their bytes at once.  The records
+     * remain unacknowledged while the batch is held, which withholds credit from the RabbitMQ
+     * server in the meantime.
+     * @param queue The queue
+     * @param messages The records
+     */
+    private void throttle(
+        final RabbitMQQueue<T> queue,
+        final List<Message> messages) {
+
+        long bytes = 0;
+        long delay;
+
+        if ((queue.getRateLimiter() == null) || (messages.isEmpty() == true)) {
+            return;
+        }
+
+        for (Message message : messages) {
+            bytes += message.getBody().length;
+        }
+
+        delay = queue.getRateLimiter().reserve(messages.size(), bytes);
+
+        if (delay <= 0) {
+            return;
+        }
+
+        queue.throttled(delay);
+
+        ThreadControl.wait(queue, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Execute record on the shared worker pool, if there is one, or on the current thread otherwise.
+     * @param queue The queue
+     * @param message The record
+     * @param channel The channel on which the record was delivered
+     */
+    private void execute(
+        final RabbitMQQueue<T> queue,
+        final Message message,
+        final Channel channel) {
+
+        if (getWorkers() > 0) {
+            getWorkerPool().submit(queue, () -> dispatch(queue, message, channel));
+        }
+        else {
+            dispatch(queue, message, channel);
+        }
+
+    }
+
+    /**
+     * Dispatch record to the processor of the queue, and acknowledge it once it has been processed.
+     * @param queue The queue
+     * @param message The record
+     * @param channel The channel on which the record was delivered
+     */
+    private void dispatch(
+        final RabbitMQQueue<T> queue,
+        final Message message,
+        final Channel channel) {
+
+        if (queue.getAsyncProcessor() != null) {
+            processAsync(queue, message, channel);
+
+            return;
+        }
+
+        try {
+
+            process(queue, message);
+        }
+        catch (AmqpException exception) {
+            acknowledge(queue, channel, message.getMessageProperties().getDeliveryTag(), false);
+
+            return;
+        }
+
+        acknowledge(queue, channel, message.getMessageProperties().getDeliveryTag(), true);
+    }
+
+    /**
+     * Get scheduler for deferred records.  The scheduler is created when it is first needed.
+     * @return The scheduler
+     */
+    private synchronized ScheduledExecutorService getScheduler() {
+
+        if (scheduler == null) {
+
+            scheduler = Executors.newScheduledThreadPool(getConsumers(), runnable -> {
+                Thread thread = new Thread(runnable, "rabbitmq-throttle");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        }
+
+        return scheduler;
+    }
+
+    /**
+     * Get reply publisher.  The reply publisher is created when it is first needed,
+     * unless the listener has stopped, so that a late reply cannot open a connection
+     * which is never closed.
+     * @return The reply publisher
+     * @throws AmqpException if the reply publisher has been closed
+     */
+    private synchronized ReplyPublisher getReplyPublisher() throws AmqpException {
+
+        if (isReplyPublisherClosed == true) {
+            throw new AmqpException("Reply publisher has been closed.");
+        }
+
+        if (replyPublisher == null) {
+            replyPublisher = new ReplyPublisher(rabbitMQClient, getRequestTimeout());
+        }
+
+        return replyPublisher;
+    }
+
+    /**
+     * Get shared worker pool.  The worker pool is created when it is first needed.
+     * @return The worker pool
+     */
+    private synchronized WorkerPool getWorkerPool() {
+
+        if (workerPool == null) {
+            workerPool = new WorkerPool(getWorkers());
+        }
+
+        return workerPool;
+    }
+
+    /**
+     * Acknowledge record.  A record that was not processed successfully is rejected and requeued.
+     * @param queue The queue
+     * @param channel The channel on which the record was delivered
+     * @param deliveryTag The delivery tag of the record
+     * @param isSuccess true if the record was processed successfully, false otherwise
+     */
+    private void acknowledge(
+        final RabbitMQQueue<T> queue,
+        final Channel channel,
+        final long deliveryTag,
+        final boolean isSuccess) {
+
+        String methodName = "acknowledge";
+
+        try {
+
+            if (isSuccess == true) {
+                channel.basicAck(deliveryTag, false);
+            }
+            else {
+                channel.basicNack(deliveryTag, false, true);
+            }
+
+        }
+        catch (Exception exception) {
+            logger.error(methodName, "Failed to acknowledge message: ", exception.getMessage(), exception);
+        }
+        finally {
+
+            queue.acknowledged();
         }
 
     }
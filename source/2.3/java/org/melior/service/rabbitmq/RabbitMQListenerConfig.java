@@ -8,18 +8,38 @@
 */
 package org.melior.service.rabbitmq;
 import org.melior.client.core.ClientConfig;
+import org.melior.client.rabbitmq.Topology;
 import org.melior.util.number.Clamp;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 
 /**
  * Configuration parameters for a {@code RabbitMQListener}, with defaults.
+ * The number of consumers, the prefetch count and the number of shared workers
+ * may be changed while the listener is running, and are also exposed over JMX.
  * @author Melior
  * @since 2.3
  */
 public class RabbitMQListenerConfig extends ClientConfig {
 
-    private int consumers = 1;
+    private volatile int consumers = 1;
 
-    private int prefetch = 1;
+    private volatile int prefetch = 1;
+
+    private int batchSize = 100;
+
+    private volatile int workers = 0;
+
+    private int priorityPrefetch = 2;
+
+    private int drainTimeout = 30000;
+
+    private boolean leanInterception = false;
+
+    private int accountingInterval = 1000;
+
+    private int managementPollInterval = 1000;
+
+    private Topology topology;
 
     /**
      * Constructor.
@@ -33,6 +53,7 @@ public class RabbitMQListenerConfig extends ClientConfig {
      * Get consumers.
      * @return The consumers
      */
+    @ManagedAttribute
     public int getConsumers() {
         return consumers;
     }
@@ -41,6 +62,7 @@ public class RabbitMQListenerConfig extends ClientConfig {
      * Set consumers.
      * @param consumers The consumers
      */
+    @ManagedAttribute
     public void setConsumers(
         final int consumers) {
         this.consumers = Clamp.clampInt(consumers, 1, Integer.MAX_VALUE);
@@ -50,6 +72,7 @@ public class RabbitMQListenerConfig extends ClientConfig {
      * Get prefetch count.
      * @return The prefetch count
      */
+    @ManagedAttribute
     public int getPrefetch() {
         return prefetch;
     }
@@ -58,9 +81,148 @@ public class RabbitMQListenerConfig extends ClientConfig {
      * Set prefetch count.
      * @param prefetch The prefetch count
      */
+    @ManagedAttribute
     public void setPrefetch(
         final int prefetch) {
         this.prefetch = Clamp.clampInt(prefetch, 1, Integer.MAX_VALUE);
     }
 
+    /**
+     * Get batch size.
+     * @return The batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set batch size.
+     * @param batchSize The batch size
+     */
+    public void setBatchSize(
+        final int batchSize) {
+        this.batchSize = Clamp.clampInt(batchSize, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get number of shared workers.
+     * @return The number of shared workers
+     */
+    @ManagedAttribute
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Set number of shared workers.
+     * @param workers The number of shared workers, or 0 to process deliveries on the consumer threads
+     */
+    @ManagedAttribute
+    public void setWorkers(
+        final int workers) {
+        this.workers = Clamp.clampInt(workers, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get prefetch count for priority queues.
+     * @return The prefetch count for priority queues
+     */
+    public int getPriorityPrefetch() {
+        return priorityPrefetch;
+    }
+
+    /**
+     * Set prefetch count for priority queues.
+     * @param priorityPrefetch The prefetch count for priority queues
+     */
+    public void setPriorityPrefetch(
+        final int priorityPrefetch) {
+        this.priorityPrefetch = Clamp.clampInt(priorityPrefetch, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get drain timeout.
+     * @return The amount of time to allow for messages in flight to complete when the listener stops, in milliseconds
+     */
+    public int getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    /**
+     * Set drain timeout.
+     * @param drainTimeout The amount of time to allow for messages in flight to complete when the listener stops, in seconds
+     */
+    public void setDrainTimeout(
+        final int drainTimeout) {
+        this.drainTimeout = Clamp.clampInt(drainTimeout, 0, Integer.MAX_VALUE / 1000) * 1000;
+    }
+
+    /**
+     * Get lean interception indicator.
+     * @return true if the request interceptor runs in lean mode, false otherwise
+     */
+    public boolean isLeanInterception() {
+        return leanInterception;
+    }
+
+    /**
+     * Set lean interception indicator.
+     * @param leanInterception true if the request interceptor runs in lean mode, false otherwise
+     */
+    public void setLeanInterception(
+        final boolean leanInterception) {
+        this.leanInterception = leanInterception;
+    }
+
+    /**
+     * Get accounting interval.
+     * @return The interval over which the work manager is notified once in lean mode, in milliseconds
+     */
+    public int getAccountingInterval() {
+        return accountingInterval;
+    }
+
+    /**
+     * Set accounting interval.
+     * @param accountingInterval The interval over which the work manager is notified once in lean mode, in seconds
+     */
+    public void setAccountingInterval(
+        final int accountingInterval) {
+        this.accountingInterval = Clamp.clampInt(accountingInterval, 0, Integer.MAX_VALUE / 1000) * 1000;
+    }
+
+    /**
+     * Get management poll interval.
+     * @return The interval at which the status of the queues with a single active consumer and of the shards of sharded queues is polled from the management API, in milliseconds
+     */
+    public int getManagementPollInterval() {
+        return managementPollInterval;
+    }
+
+    /**
+     * Set management poll interval.
+     * @param managementPollInterval The interval at which the status of the queues with a single active consumer and of the shards of sharded queues is polled from the management API, in seconds
+     */
+    public void setManagementPollInterval(
+        final int managementPollInterval) {
+        this.managementPollInterval = Clamp.clampInt(managementPollInterval, 1, Integer.MAX_VALUE / 1000) * 1000;
+    }
+
+    /**
+     * Get topology.
+     * @return The topology which is declared before the listener starts consuming
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Set topology.
+     * @param topology The topology which is declared before the listener starts consuming
+     */
+    public void setTopology(
+        final Topology topology) {
+        this.topology = topology;
+    }
+
 }
@@ -0,0 +1,62 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+/**
+ * A Reactive Streams {@code Publisher} of the messages that arrive in a
+ * {@code RabbitMQQueue}.  Each subscriber gets its own RabbitMQ consumer
+ * on a dedicated pooled connection, which is released when the
+ * subscription is cancelled or terminates.
+ * <p>
+ * The number of messages which the RabbitMQ server delivers ahead of
+ * subscriber demand is bounded by the prefetch count of the listener, so
+ * a slow subscriber applies backpressure all the way to the RabbitMQ server.
+ * @author Melior
+ * @since 2.3
+ * @see Delivery
+ */
+public class RabbitMQPublisher<T> implements Publisher<Delivery<T>> {
+
+    private RabbitMQListener<T> listener;
+
+    private RabbitMQQueue<T> queue;
+
+    /**
+     * Constructor.
+     * @param listener The listener
+     * @param queue The queue
+     */
+    RabbitMQPublisher(
+        final RabbitMQListener<T> listener,
+        final RabbitMQQueue<T> queue) {
+
+        super();
+
+        this.listener = listener;
+
+        this.queue = queue;
+    }
+
+    /**
+     * Subscribe to the messages in the queue.
+     * @param subscriber The subscriber
+     */
+    public void subscribe(
+        final Subscriber<? super Delivery<T>> subscriber) {
+
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must be provided.");
+        }
+
+        new RabbitMQSubscription<T>(listener, queue, subscriber).start();
+    }
+
+}
@@ -7,31 +7,160 @@
         Service Harness
 */
 package org.melior.service.rabbitmq;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import org.melior.client.exception.RemotingException;
+import org.melior.client.rabbitmq.Topology;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.melior.service.exception.ExceptionType;
+import org.melior.service.work.BatchProcessor;
 import org.melior.service.work.SingletonProcessor;
+import org.melior.util.number.Clamp;
 import org.melior.util.number.Counter;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 
 /**
  * A RabbitMQ queue which is registered with a {@code RabbitMQListener} for
  * processing.  If a {@code processor} is provided when the queue
  * is built, then any new messages that are published to the queue will be
- * processed by the {@code RabbitMQListener} individually.
+ * processed by the {@code RabbitMQListener} individually.  If a {@code batchProcessor}
+ * is provided instead, then new messages will be processed in batches.  If an
+ * asynchronous processor is provided instead, then each message is acknowledged
+ * when the {@code CompletionStage} returned by the processor completes, which
+ * frees the consumer thread while the message is being processed.
+ * If a reply processor is provided instead, then each message is processed as a
+ * request, and the result is published to the reply queue of the request.
+ * <p>
+ * If a rate limit is provided, then messages which arrive faster than the rate
+ * limit allows are deferred without blocking a consumer thread.  Deferred messages
+ * are not acknowledged until they have been processed, which withholds credit from
+ * the RabbitMQ server until the rate limit allows more messages.
+ * <p>
+ * If a maximum priority is provided, then the queue is declared as a priority queue,
+ * and is consumed with a low prefetch count so that urgent messages are not held
+ * up behind less urgent messages that have already been delivered to the consumer.
+ * <p>
+ * If the queue has a single active consumer, then the RabbitMQ server delivers
+ * messages to one consumer at a time, in order, while the consumers of the other
+ * instances of the service wait as warm standbys.  When the management API is
+ * configured, the active consumer is observed, and the time taken for a standby
+ * to be promoted after the previous active consumer went away is recorded.
+ * <p>
+ * If the queue is sharded, then each shard is declared with a single active consumer,
+ * and each instance of the service consumes from every shard with one consumer, so
+ * that the messages of a shard are processed in order by one instance at a time.
+ * When the management API is configured, an instance which is active on more than
+ * its fair share of the shards hands the surplus over to the other instances.
+ * <p>
+ * If a {@code StreamOffset} is provided, then the queue is consumed as a RabbitMQ
+ * stream queue from the given position, and the low watermark of the offsets, below
+ * which every message has been processed successfully, is checkpointed periodically
+ * to the {@code OffsetStore}.  A message which is still in flight, or which failed,
+ * holds the watermark back, so that it is delivered again when the stream resumes.
  * @author Melior
  * @since 2.3
  * @see SingletonProcessor
+ * @see BatchProcessor
+ * @see StreamOffset
  */
 public class RabbitMQQueue<T> {
 
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
     private RabbitMQListener<T> listener;
 
     private String name;
 
     private SingletonProcessor<T> processor;
 
+    private BatchProcessor<T> batchProcessor;
+
+    private Function<T, CompletionStage<?>> asyncProcessor;
+
+    private Function<T, ?> replyProcessor;
+
+    private StreamOffset streamOffset;
+
+    private OffsetStore offsetStore;
+
+    private long checkpointInterval;
+
+    private long lastOffset = -1;
+
+    private long checkpointedOffset = -1;
+
+    private long completedOffset = -1;
+
+    private TreeSet<Long> pendingOffsets = new TreeSet<Long>();
+
+    private long lastCheckpoint;
+
+    private RateLimiter rateLimiter;
+
+    private int weight = 1;
+
+    private int maxPriority;
+
+    private int shards;
+
+    private boolean singleActiveConsumer;
+
+    private String consumerTagPrefix;
+
+    private Set<String> yieldingShards;
+
+    private Topology topology;
+
     private Counter totalMessages;
 
     private Counter failedMessages;
 
+    private Counter throttledMessages;
+
+    private AtomicLong throttledTime;
+
+    private AtomicInteger inFlightMessages;
+
+    private volatile boolean draining;
+
+    private volatile long drainDeadline;
+
+    private volatile long failedAt;
+
+    private Counter consumerFailures;
+
+    private Counter recoveries;
+
+    private volatile long lastRecoveryTime;
+
+    private volatile long maximumRecoveryTime;
+
+    private volatile boolean standby;
+
+    private Set<String> activeQueues;
+
+    private Map<String, Long> supersededAt;
+
+    private Counter promotions;
+
+    private volatile long lastPromotionLatency;
+
+    private volatile long maximumPromotionLatency;
+
     /**
      * Constructor.
      * @param listener The listener
@@ -51,6 +180,18 @@ public class RabbitMQQueue<T> {
 
         totalMessages = Counter.of(0);
         failedMessages = Counter.of(0);
+        throttledMessages = Counter.of(0);
+        throttledTime = new AtomicLong();
+        inFlightMessages = new AtomicInteger();
+        consumerFailures = Counter.of(0);
+        recoveries = Counter.of(0);
+        promotions = Counter.of(0);
+
+        consumerTagPrefix = "melior-" + UUID.randomUUID().toString() + "-";
+        yieldingShards = ConcurrentHashMap.newKeySet();
+
+        activeQueues = new HashSet<String>();
+        supersededAt = new HashMap<String, Long>();
     }
 
     /**
@@ -62,10 +203,203 @@ public class RabbitMQQueue<T> {
     public RabbitMQQueue<T> process(
         final SingletonProcessor<T> processor) {
         this.processor = processor;
+        this.batchProcessor = null;
+        this.asyncProcessor = null;
+        this.replyProcessor = null;
+
+        return this;
+    }
+
+    /**
+     * Set batch processor.  New arrivals in the queue
+     * will be processed in batches.
+     * @param batchProcessor The batch processor
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> batch(
+        final BatchProcessor<T> batchProcessor) {
+        this.batchProcessor = batchProcessor;
+        this.processor = null;
+        this.asyncProcessor = null;
+        this.replyProcessor = null;
+
+        return this;
+    }
+
+    /**
+     * Set asynchronous processor.  New arrivals in the queue will be processed
+     * individually, and each message will be acknowledged when the completion
+     * stage returned by the processor completes normally, or rejected and
+     * requeued when it completes exceptionally.  The number of messages in
+     * flight is bounded by the prefetch count of the listener.
+     * @param asyncProcessor The asynchronous processor
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> processAsync(
+        final Function<T, CompletionStage<?>> asyncProcessor) {
+        this.asyncProcessor = asyncProcessor;
+        this.processor = null;
+        this.batchProcessor = null;
+        this.replyProcessor = null;
+
+        return this;
+    }
+
+    /**
+     * Set reply processor.  New arrivals in the queue will be processed individually
+     * as requests, and the result of the processor will be published as the reply to
+     * the reply queue of each request, with the correlation identifier of the request.
+     * Each request is acknowledged once the RabbitMQ server has confirmed its reply.
+     * @param <R> The reply type
+     * @param replyProcessor The reply processor
+     * @return The RabbitMQ queue
+     */
+    public <R> RabbitMQQueue<T> reply(
+        final Function<T, R> replyProcessor) {
+        this.replyProcessor = replyProcessor;
+        this.processor = null;
+        this.batchProcessor = null;
+        this.asyncProcessor = null;
+
+        return this;
+    }
+
+    /**
+     * Consume queue as a stream queue, starting from the given position.
+     * @param streamOffset The position to start consuming from
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> stream(
+        final StreamOffset streamOffset) {
+        this.streamOffset = streamOffset;
+
+        return this;
+    }
+
+    /**
+     * Checkpoint the offset of the last message that was processed successfully
+     * to the offset store at the given interval.  A zero interval checkpoints
+     * after every message or batch.
+     * @param offsetStore The offset store
+     * @param interval The checkpoint interval
+     * @param timeUnit The time unit of the checkpoint interval
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> checkpoint(
+        final OffsetStore offsetStore,
+        final long interval,
+        final TimeUnit timeUnit) {
+        this.offsetStore = offsetStore;
+        this.checkpointInterval = timeUnit.toMillis(interval);
+
+        return this;
+    }
+
+    /**
+     * Limit the rate at which messages are processed, with a burst allowance of one second.
+     * The rate limit applies to all processors.  A batch reserves the tokens for all its
+     * messages at once, and is held on the consumer thread while it is throttled.
+     * @param messagesPerSecond The maximum number of messages per second, or 0 for no limit
+     * @param bytesPerSecond The maximum number of bytes per second, or 0 for no limit
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> rateLimit(
+        final double messagesPerSecond,
+        final double bytesPerSecond) {
+        return rateLimit(messagesPerSecond, bytesPerSecond, 1);
+    }
+
+    /**
+     * Limit the rate at which messages are processed.
+     * The rate limit applies to all processors.  A batch reserves the tokens for all its
+     * messages at once, and is held on the consumer thread while it is throttled.
+     * @param messagesPerSecond The maximum number of messages per second, or 0 for no limit
+     * @param bytesPerSecond The maximum number of bytes per second, or 0 for no limit
+     * @param burst The burst allowance, in seconds at the maximum rate
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> rateLimit(
+        final double messagesPerSecond,
+        final double bytesPerSecond,
+        final double burst) {
+        this.rateLimiter = ((messagesPerSecond <= 0) && (bytesPerSecond <= 0)) ? null
+            : new RateLimiter(messagesPerSecond, bytesPerSecond, Math.max(0, burst));
+
+        return this;
+    }
+
+    /**
+     * Set weight.  If the listener has a shared worker pool, then the workers take
+     * deliveries from the queues in proportion to their weights.
+     * @param weight The weight of the queue
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> weight(
+        final int weight) {
+        this.weight = Math.max(1, weight);
+
+        return this;
+    }
+
+    /**
+     * Set maximum priority.  The queue is declared with the {@code x-max-priority}
+     * argument when the listener starts, and is consumed with the priority prefetch
+     * count of the listener.
+     * @param maxPriority The maximum priority, from 1 to 255
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> priority(
+        final int maxPriority) {
+        this.maxPriority = Clamp.clampInt(maxPriority, 1, 255);
 
         return this;
     }
 
+    /**
+     * Set single active consumer.  The queue is declared with the {@code x-single-active-consumer}
+     * argument when the listener starts, and each instance of the service consumes from the queue
+     * with a single consumer.  The RabbitMQ server delivers messages to one consumer at a time, and
+     * promotes one of the waiting consumers when the active consumer goes away.  The waiting
+     * consumers keep their connections and channels open, so that a promotion does not wait
+     * for a consumer to start.
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> singleActiveConsumer() {
+        this.singleActiveConsumer = true;
+
+        return this;
+    }
+
+    /**
+     * Set number of shards.  The queue becomes a logical queue which is spread over
+     * the given number of shard queues behind an {@code x-consistent-hash} exchange
+     * with the name of the queue, which are declared with a single active consumer
+     * when the listener starts.  Each instance of the service consumes from every shard
+     * with one consumer, and the RabbitMQ server delivers the messages of each shard to
+     * one of them at a time, so the messages with the same routing key are processed in
+     * order.  When the management API is configured on the client, the shards are spread
+     * over the instances of the service by handing over the shards that an instance is
+     * active on beyond its fair share, and are rebalanced as instances come and go.
+     * @param shards The number of shards
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> shards(
+        final int shards) {
+        this.shards = Clamp.clampInt(shards, 1, 1024);
+
+        return this;
+    }
+
+    /**
+     * Get a Reactive Streams publisher of the messages that arrive in the queue.
+     * Each subscriber consumes from the queue independently, and must acknowledge
+     * or reject each delivery.
+     * @return The publisher
+     */
+    public RabbitMQPublisher<T> publisher() {
+        return new RabbitMQPublisher<T>(listener, this);
+    }
+
     /**
      * Start listening to queue.
      * @throws RemotingException if unable to start listening to the queue
@@ -74,6 +408,14 @@ public class RabbitMQQueue<T> {
         listener.start(this);
     }
 
+    /**
+     * Get listener.
+     * @return The listener
+     */
+    RabbitMQListener<T> getListener() {
+        return listener;
+    }
+
     /**
      * Get name.
      * @return The name
@@ -90,6 +432,419 @@ public class RabbitMQQueue<T> {
         return processor;
     }
 
+    /**
+     * Get batch processor.
+     * @return The batch processor
+     */
+    BatchProcessor<T> getBatchProcessor() {
+        return batchProcessor;
+    }
+
+    /**
+     * Get asynchronous processor.
+     * @return The asynchronous processor
+     */
+    Function<T, CompletionStage<?>> getAsyncProcessor() {
+        return asyncProcessor;
+    }
+
+    /**
+     * Get reply processor.
+     * @return The reply processor
+     */
+    Function<T, ?> getReplyProcessor() {
+        return replyProcessor;
+    }
+
+    /**
+     * Get weight.
+     * @return The weight
+     */
+    int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Check whether queue is a priority queue.
+     * @return true if the queue is a priority queue, false otherwise
+     */
+    boolean isPriority() {
+        return maxPriority > 0;
+    }
+
+    /**
+     * Check whether queue is sharded.
+     * @return true if the queue is sharded, false otherwise
+     */
+    boolean isSharded() {
+        return shards > 0;
+    }
+
+    /**
+     * Get names of the queues to consume from.
+     * @return The names of the shard queues if the queue is sharded, or the name of the queue otherwise
+     */
+    String[] getQueueNames() {
+
+        String[] queueNames;
+
+        if (isSharded() == false) {
+            return new String[] {name};
+        }
+
+        queueNames = new String[shards];
+
+        for (int i = 0; i < shards; i++) {
+            queueNames[i] = Topology.getShardName(name, i);
+        }
+
+        return queueNames;
+    }
+
+    /**
+     * Check whether queue has a single active consumer.
+     * @return true if the queue has a single active consumer, false otherwise
+     */
+    boolean isSingleActiveConsumer() {
+        return singleActiveConsumer;
+    }
+
+    /**
+     * Get consumer tag with which this instance of the service consumes from queue.  The
+     * tag identifies the active consumer of a queue with a single active consumer.
+     * @param queueName The name of the queue, or of the shard queue if the queue is sharded
+     * @return The consumer tag
+     */
+    String getConsumerTag(
+        final String queueName) {
+
+        return consumerTagPrefix + queueName;
+    }
+
+    /**
+     * Hand over shard to the consumer of another instance of the service.  The consumer
+     * of the shard is restarted, after which it waits behind the other consumers.
+     * @param shardName The name of the shard queue
+     */
+    void yieldShard(
+        final String shardName) {
+        yieldingShards.add(shardName);
+    }
+
+    /**
+     * Take request to hand over shard.
+     * @param shardName The name of the shard queue
+     * @return true if the shard is to be handed over, false otherwise
+     */
+    boolean takeYield(
+        final String shardName) {
+        return yieldingShards.remove(shardName);
+    }
+
+    /**
+     * Get queue arguments.
+     * @return The arguments with which the queue is declared
+     */
+    Map<String, Object> getQueueArguments() {
+
+        Map<String, Object> arguments;
+
+        arguments = new HashMap<String, Object>();
+
+        if (isPriority() == true) {
+            arguments.put("x-max-priority", maxPriority);
+        }
+
+        if ((singleActiveConsumer == true) || (isSharded() == true)) {
+            arguments.put("x-single-active-consumer", true);
+        }
+
+        return arguments;
+    }
+
+    /**
+     * Get topology of queue.  The topology is created when it is first needed.
+     * @return The topology which declares the queue with its queue arguments, or null if the queue needs no declaration
+     */
+    synchronized Topology getTopology() {
+
+        if ((topology == null) && (isSharded() == true)) {
+            topology = Topology.create().shardedQueue(name, shards, getQueueArguments());
+        }
+        else if ((topology == null) && ((isPriority() == true) || (singleActiveConsumer == true))) {
+            topology = Topology.create().queue(name, getQueueArguments());
+        }
+
+        return topology;
+    }
+
+    /**
+     * Get rate limiter.
+     * @return The rate limiter, or null if the queue is not rate limited
+     */
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Check whether queue is consumed as a stream queue.
+     * @return true if the queue is consumed as a stream queue, false otherwise
+     */
+    boolean isStream() {
+        return streamOffset != null;
+    }
+
+    /**
+     * Get consumer arguments.  Once a message has been processed successfully, the
+     * x-stream-offset argument resumes after the low watermark of the offsets, so that the
+     * consumers which are started after a suspension, a prefetch change or a recovery
+     * do not replay the stream from the initial offset.  Otherwise the argument is
+     * resolved from the offset store if the stream offset is a stored one.  The offsets
+     * which are pending when the consumers start again are delivered again, so they are
+     * no longer tracked.
+     * @return The consumer arguments
+     * @throws RemotingException if unable to resolve the stream offset
+     */
+    Map<String, Object> getConsumerArguments() throws RemotingException {
+
+        Long storedOffset;
+        Object value;
+        long resumeOffset;
+
+        if (streamOffset == null) {
+            return Collections.emptyMap();
+        }
+
+        synchronized (this) {
+            resumeOffset = lastOffset;
+
+            pendingOffsets.clear();
+            completedOffset = lastOffset;
+        }
+
+        if (resumeOffset >= 0) {
+
+            value = Long.valueOf(resumeOffset + 1);
+        }
+        else if (streamOffset.isStored() == true) {
+
+            if (offsetStore == null) {
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Offset store must be configured to resume from a stored offset.");
+            }
+
+            try {
+
+                storedOffset = offsetStore.load(name);
+            }
+            catch (Exception exception) {
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Failed to load stored offset: " + exception.getMessage(), exception);
+            }
+
+            value = (storedOffset == null) ? streamOffset.getFallback().getValue() : Long.valueOf(storedOffset + 1);
+        }
+        else {
+
+            value = streamOffset.getValue();
+        }
+
+        return Collections.singletonMap("x-stream-offset", value);
+    }
+
+    /**
+     * Track the offset of a message which has been delivered from a stream queue, so
+     * that the low watermark does not advance past it until it has been processed
+     * successfully.  Must be invoked on the consumer thread, in the order of delivery.
+     * @param message The message
+     */
+    void track(
+        final Message message) {
+
+        Object offset;
+
+        if (streamOffset == null) {
+            return;
+        }
+
+        offset = message.getMessageProperties().getHeaders().get("x-stream-offset");
+
+        if ((offset instanceof Number) == false) {
+            return;
+        }
+
+        synchronized (this) {
+            pendingOffsets.add(((Number) offset).longValue());
+        }
+
+    }
+
+    /**
+     * Track the offsets of a batch of messages which has been delivered from a stream queue.
+     * @param messages The messages
+     */
+    void track(
+        final List<Message> messages) {
+
+        for (Message message : messages) {
+            track(message);
+        }
+
+    }
+
+    /**
+     * Record that a message has been processed successfully.  Advances the low watermark
+     * of the offsets and checkpoints it to the offset store if the checkpoint interval
+     * has elapsed.
+     * @param message The message
+     */
+    void commit(
+        final Message message) {
+
+        commit(message.getMessageProperties().getHeaders());
+    }
+
+    /**
+     * Record that a batch of messages has been processed successfully.
+     * @param messages The messages
+     */
+    void commit(
+        final List<Message> messages) {
+
+        for (Message message : messages) {
+            commit(message);
+        }
+
+    }
+
+    /**
+     * Record that a message has been processed successfully.  The low watermark is the
+     * highest offset below which every tracked message has been settled, so a message
+     * which is still in flight holds it back.  An offset which is not tracked, such as
+     * one which completes after the consumers have started again, is ignored.
+     * @param headers The headers of the message
+     */
+    void commit(
+        final Map<String, Object> headers) {
+        settle(headers, false);
+    }
+
+    /**
+     * Record that a message has failed.  A stream queue does not deliver a rejected message
+     * again, so the offset of a failed message is settled as if it had completed, to prevent
+     * it from holding back the low watermark for as long as the consumer lives and from
+     * replaying everything after it when the stream resumes.  The skipped offset is logged.
+     * @param message The message
+     */
+    void fail(
+        final Message message) {
+
+        fail(message.getMessageProperties().getHeaders());
+    }
+
+    /**
+     * Record that a batch of messages has failed.
+     * @param messages The messages
+     */
+    void fail(
+        final List<Message> messages) {
+
+        for (Message message : messages) {
+            fail(message);
+        }
+
+    }
+
+    /**
+     * Record that a message has failed.
+     * @param headers The headers of the message
+     */
+    void fail(
+        final Map<String, Object> headers) {
+        settle(headers, true);
+    }
+
+    /**
+     * Settle the offset of a message, and advance the low watermark of the offsets past it,
+     * checkpointing the watermark to the offset store if the checkpoint interval has elapsed.
+     * @param headers The headers of the message
+     * @param failed true if the message failed, false otherwise
+     */
+    private void settle(
+        final Map<String, Object> headers,
+        final boolean failed) {
+
+        String methodName = "settle";
+        Object offset;
+
+        if ((streamOffset == null) || (headers == null)) {
+            return;
+        }
+
+        offset = headers.get("x-stream-offset");
+
+        if ((offset instanceof Number) == false) {
+            return;
+        }
+
+        synchronized (this) {
+
+            if (pendingOffsets.remove(((Number) offset).longValue()) == false) {
+                return;
+            }
+
+            completedOffset = Math.max(completedOffset, ((Number) offset).longValue());
+
+            lastOffset = Math.max(lastOffset, (pendingOffsets.isEmpty() == true) ? completedOffset : pendingOffsets.first() - 1);
+
+            store(false);
+        }
+
+        if (failed == true) {
+            logger.warn(methodName, "Skipped failed offset ", offset, " of stream queue [", name, "].");
+        }
+
+    }
+
+    /**
+     * Checkpoint the low watermark of the offsets to the offset store, regardless of the checkpoint interval.  Invoked when
+     * the container of the queue is stopped.
+     */
+    synchronized void checkpoint() {
+        store(true);
+    }
+
+    /**
+     * Store the low watermark of the offsets, if it has not been stored yet and the checkpoint interval has elapsed.
+     * @param force true to ignore the checkpoint interval, false otherwise
+     */
+    private void store(
+        final boolean force) {
+
+        String methodName = "store";
+        long now;
+
+        if ((offsetStore == null) || (lastOffset < 0) || (lastOffset == checkpointedOffset)) {
+            return;
+        }
+
+        now = System.currentTimeMillis();
+
+        if ((force == false) && (now - lastCheckpoint < checkpointInterval)) {
+            return;
+        }
+
+        try {
+
+            offsetStore.store(name, lastOffset);
+
+            checkpointedOffset = lastOffset;
+            lastCheckpoint = now;
+        }
+        catch (Exception exception) {
+            logger.error(methodName, "Failed to store offset: ", exception.getMessage(), exception);
+        }
+
+    }
+
     /**
      * Get total number of messages.
      * @return The total number of messages
@@ -106,4 +861,246 @@ public class RabbitMQQueue<T> {
         return failedMessages;
     }
 
+    /**
+     * Get number of messages which were deferred by the rate limit.
+     * @return The number of throttled messages
+     */
+    public Counter getThrottledMessages() {
+        return throttledMessages;
+    }
+
+    /**
+     * Get total amount of time for which messages were deferred by the rate limit.
+     * @return The total throttled time in milliseconds
+     */
+    public long getThrottledTime() {
+        return throttledTime.get();
+    }
+
+    /**
+     * Record that a message was deferred by the rate limit.
+     * @param delay The amount of time in nanoseconds for which the message was deferred
+     */
+    void throttled(
+        final long delay) {
+
+        throttledMessages.increment();
+        throttledTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(delay));
+    }
+
+    /**
+     * Get number of messages in flight.  A message is in flight from the time that it
+     * is handed to an asynchronous or deferred processor until it has been acknowledged.
+     * @return The number of messages in flight
+     */
+    public int getInFlightMessages() {
+        return inFlightMessages.get();
+    }
+
+    /**
+     * Record that a message has been handed to a processor and awaits acknowledgement.
+     */
+    void dispatched() {
+        inFlightMessages.incrementAndGet();
+    }
+
+    /**
+     * Record that a message has been acknowledged.
+     */
+    void acknowledged() {
+        inFlightMessages.decrementAndGet();
+    }
+
+    /**
+     * Start draining queue.
+     * @param drainDeadline The time at which draining ends, in milliseconds since the epoch
+     */
+    void drain(
+        final long drainDeadline) {
+        this.drainDeadline = drainDeadline;
+        this.draining = true;
+    }
+
+    /**
+     * Stop draining queue.
+     */
+    void resume() {
+        this.draining = false;
+    }
+
+    /**
+     * Check whether queue is being drained.
+     * @return true if the queue is being drained, false otherwise
+     */
+    boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Get drain deadline.
+     * @return The time at which draining ends, in milliseconds since the epoch
+     */
+    long getDrainDeadline() {
+        return drainDeadline;
+    }
+
+    /**
+     * Get number of consumer failures.  A consumer fails when it is cancelled by the
+     * RabbitMQ server, or when its channel or connection is shut down.
+     * @return The number of consumer failures
+     */
+    public Counter getConsumerFailures() {
+        return consumerFailures;
+    }
+
+    /**
+     * Get number of consumer recoveries.
+     * @return The number of consumer recoveries
+     */
+    public Counter getRecoveries() {
+        return recoveries;
+    }
+
+    /**
+     * Get time taken by the last consumer recovery, measured from the loss of the connection,
+     * or from the failure of the consumer if the connection was not lost.
+     * @return The recovery time, in milliseconds
+     */
+    public long getLastRecoveryTime() {
+        return lastRecoveryTime;
+    }
+
+    /**
+     * Get longest time taken by a consumer recovery.
+     * @return The recovery time, in milliseconds
+     */
+    public long getMaximumRecoveryTime() {
+        return maximumRecoveryTime;
+    }
+
+    /**
+     * Check whether the consumer of the queue is a standby, which has been observed waiting
+     * behind the active consumer of another instance of the service.  Only applies to a queue
+     * with a single active consumer, or a sharded queue, when the management API is configured.
+     * @return true if the consumer is a standby, false otherwise
+     */
+    public boolean isStandby() {
+        return standby;
+    }
+
+    /**
+     * Get number of times that the consumer of the queue has been promoted from standby to active.
+     * The activation of a consumer which has not been observed as a standby is not a promotion.
+     * @return The number of promotions
+     */
+    public Counter getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * Get time taken by the last promotion.  The time is measured from the last time at which
+     * the consumer of another instance of the service was observed to be active, to the first
+     * time at which the consumer of this instance was observed to be active, so it is accurate
+     * to within the management poll interval of the listener.
+     * @return The promotion latency, in milliseconds
+     */
+    public long getLastPromotionLatency() {
+        return lastPromotionLatency;
+    }
+
+    /**
+     * Get longest time taken by a promotion.
+     * @return The promotion latency, in milliseconds
+     */
+    public long getMaximumPromotionLatency() {
+        return maximumPromotionLatency;
+    }
+
+    /**
+     * Record the active consumer of queue, as observed through the management API.  If the
+     * consumer of this instance of the service has become active on a queue where the consumer
+     * of another instance was observed to be active before, then it has been promoted.
+     * @param queueName The name of the queue, or of the shard queue if the queue is sharded
+     * @param activeConsumerTag The consumer tag of the active consumer, or null if there is no active consumer
+     * @param observedAt The time at which the active consumer was observed, in milliseconds since the epoch
+     */
+    synchronized void observed(
+        final String queueName,
+        final String activeConsumerTag,
+        final long observedAt) {
+
+        Long previousAt;
+
+        if (getConsumerTag(queueName).equals(activeConsumerTag) == true) {
+            previousAt = supersededAt.remove(queueName);
+
+            if ((activeQueues.add(queueName) == true) && (previousAt != null)) {
+                promotions.increment();
+
+                lastPromotionLatency = observedAt - previousAt;
+                maximumPromotionLatency = Math.max(maximumPromotionLatency, lastPromotionLatency);
+            }
+
+        }
+        else {
+            activeQueues.remove(queueName);
+
+            if (activeConsumerTag != null) {
+                supersededAt.put(queueName, observedAt);
+            }
+
+        }
+
+        standby = activeQueues.isEmpty();
+    }
+
+    /**
+     * Record that a consumer of the queue has failed.  The recovery is measured from
+     * the first failure which is outstanding.
+     */
+    synchronized void consumerFailed() {
+
+        consumerFailures.increment();
+
+        if (failedAt > 0) {
+            return;
+        }
+
+        failedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Record that a consumer has started.  If a consumer failure is outstanding,
+     * then the consumer has recovered.
+     */
+    synchronized void consumerStarted() {
+
+        if (failedAt == 0) {
+            return;
+        }
+
+        lastRecoveryTime = System.currentTimeMillis() - failedAt;
+        maximumRecoveryTime = Math.max(maximumRecoveryTime, lastRecoveryTime);
+
+        recoveries.increment();
+
+        failedAt = 0;
+    }
+
+    /**
+     * Record that a message has been received and is about to be processed on the current thread.
+     * @param properties The properties of the message
+     */
+    void received(
+        final MessageProperties properties) {
+    }
+
+    /**
+     * Flush any accounting that has been deferred by the queue.
+     * @param force true to flush all deferred accounting, false to flush only the accounting which is due
+     */
+    void flush(
+        final boolean force) {
+    }
+
 }
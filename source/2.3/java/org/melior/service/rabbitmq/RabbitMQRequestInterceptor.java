@@ -7,15 +7,25 @@
         Service Harness
 */
 package org.melior.service.rabbitmq;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.melior.client.rabbitmq.TraceHeaders;
 import org.melior.context.service.ServiceContext;
 import org.melior.context.transaction.TransactionContext;
 import org.melior.logging.core.Logger;
 import org.melior.logging.core.LoggerFactory;
 import org.melior.service.exception.ApplicationException;
 import org.melior.service.exception.ExceptionType;
+import org.melior.service.work.BatchProcessor;
 import org.melior.service.work.SingletonProcessor;
 import org.melior.service.work.WorkManager;
+import org.springframework.amqp.core.MessageProperties;
 
 /**
  * Intercepts any messages that have been retrieved by the {@code RabbitMQListener}, before
@@ -23,8 +33,24 @@ import org.melior.service.work.WorkManager;
  * to allow the {@code WorkManager} to control the flow of the messages through
  * the application.
  * <p>
- * The transaction context is populated with an automatically generated UUID
- * for the duration of processing of the messages.
+ * The transaction context is populated with the transaction identifier that
+ * the producer of the message placed in the message headers, or with the
+ * correlation id of the message, or with an automatically generated UUID if
+ * the message carries neither, for the duration of processing of the messages.
+ * The W3C trace context of the message is restored too, so that any message
+ * that is sent while processing continues the same trace.
+ * <p>
+ * In lean mode the bookkeeping is reduced for queues with high message rates.
+ * A message which carries no transaction identifier is given a sequence
+ * number with a random prefix, instead of a UUID.
+ * The work manager is notified once for all the messages that the queue
+ * processes within an accounting interval, rather than once for every message.
+ * The processing threads only count their messages, and the notifications are
+ * made by the supervisor of the queue on its own transaction context, so that
+ * no thread touches the transaction context of another thread.  The number of
+ * messages in each accounting slice is logged when the slice closes.  As the work
+ * manager only sees the slices, it cannot hold back or reject individual messages,
+ * so admission control by the work manager is off in lean mode.
  * @author Melior
  * @since 2.3
  */
@@ -34,8 +60,34 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
 
     private SingletonProcessor<T> processor;
 
+    private BatchProcessor<T> batchProcessor;
+
+    private Function<T, CompletionStage<?>> asyncProcessor;
+
+    private Function<T, ?> replyProcessor;
+
     private WorkManager workManager;
 
+    private String operation;
+
+    private String transactionPrefix;
+
+    private AtomicLong transactionSequence;
+
+    private ThreadLocal<MessageProperties> properties;
+
+    private AtomicInteger activeMessages;
+
+    private AtomicLong sliceMessages;
+
+    private AtomicBoolean sliceException;
+
+    private TransactionContext sliceContext;
+
+    private long sliceDeadline;
+
+    private long sliceCount;
+
     /**
      * Constructor.
      * @param listener The listener
@@ -50,6 +102,17 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
         super(listener, name, capacity);
 
         this.workManager = ServiceContext.getWorkManager();
+
+        operation = "rabbitmq/" + name;
+
+        transactionPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong()) + "-";
+        transactionSequence = new AtomicLong();
+
+        properties = new ThreadLocal<MessageProperties>();
+
+        activeMessages = new AtomicInteger();
+        sliceMessages = new AtomicLong();
+        sliceException = new AtomicBoolean();
     }
 
     /**
@@ -66,6 +129,51 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
         return this;
     }
 
+    /**
+     * Set batch processor.  New arrivals in the queue
+     * will be processed in batches.
+     * @param batchProcessor The batch processor
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> batch(
+        final BatchProcessor<T> batchProcessor) {
+        this.batchProcessor = batchProcessor;
+        super.batch(messages -> process(messages));
+
+        return this;
+    }
+
+    /**
+     * Set asynchronous processor.  New arrivals in the queue will be processed
+     * individually.  The work manager is notified while the processor is
+     * dispatching the message, as the completion stage finishes on a
+     * different thread to the transaction context.
+     * @param asyncProcessor The asynchronous processor
+     * @return The RabbitMQ queue
+     */
+    public RabbitMQQueue<T> processAsync(
+        final Function<T, CompletionStage<?>> asyncProcessor) {
+        this.asyncProcessor = asyncProcessor;
+        super.processAsync(message -> dispatch(message));
+
+        return this;
+    }
+
+    /**
+     * Set reply processor.  New arrivals in the queue will be processed
+     * individually as requests, and the results published as replies.
+     * @param <R> The reply type
+     * @param replyProcessor The reply processor
+     * @return The RabbitMQ queue
+     */
+    public <R> RabbitMQQueue<T> reply(
+        final Function<T, R> replyProcessor) {
+        this.replyProcessor = replyProcessor;
+        super.reply(message -> reply(message));
+
+        return this;
+    }
+
     /**
      * Process message.
      * @param message The message
@@ -75,11 +183,8 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
         final T message) throws ApplicationException {
 
         boolean isException = false;
-        String operation;
 
-        operation = getOperation();
-
-        startRequest(operation);
+        begin();
 
         try {
 
@@ -99,9 +204,157 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
         }
         finally {
 
+            end(isException);
+        }
+
+    }
+
+    /**
+     * Process batch of messages.
+     * @param messages The messages
+     * @throws ApplicationException if unable to process the messages
+     */
+    protected void process(
+        final List<T> messages) throws ApplicationException {
+
+        boolean isException = false;
+
+        begin();
+
+        try {
+
+            batchProcessor.process(messages);
+        }
+        catch (ApplicationException exception) {
+
+            isException = true;
+
+            throw exception;
+        }
+        catch (Throwable exception) {
+
+            isException = true;
+
+            throw new ApplicationException(ExceptionType.UNEXPECTED, "Failed to process messages: " + exception.getMessage());
+        }
+        finally {
+
+            end(isException);
+        }
+
+    }
+
+    /**
+     * Dispatch message to asynchronous processor.
+     * @param message The message
+     * @return The completion stage of the processing
+     * @throws RuntimeException if unable to dispatch the message
+     */
+    protected CompletionStage<?> dispatch(
+        final T message) throws RuntimeException {
+
+        boolean isException = false;
+
+        try {
+
+            begin();
+        }
+        catch (ApplicationException exception) {
+            throw new RuntimeException(exception.getMessage(), exception);
+        }
+
+        try {
+
+            return asyncProcessor.apply(message);
+        }
+        catch (RuntimeException exception) {
+
+            isException = true;
+
+            throw exception;
+        }
+        finally {
+
+            end(isException);
+        }
+
+    }
+
+    /**
+     * Process request and produce reply.
+     * @param message The request
+     * @return The reply
+     * @throws RuntimeException if unable to process the request
+     */
+    protected Object reply(
+        final T message) throws RuntimeException {
+
+        boolean isException = false;
+
+        try {
+
+            begin();
+        }
+        catch (ApplicationException exception) {
+            throw new RuntimeException(exception.getMessage(), exception);
+        }
+
+        try {
+
+            return replyProcessor.apply(message);
+        }
+        catch (RuntimeException exception) {
+
+            isException = true;
+
+            throw exception;
+        }
+        finally {
+
+            end(isException);
+        }
+
+    }
+
+    /**
+     * Record that a message has been received and is about to be processed on the current thread.
+     * The properties are kept to restore the transaction identifier and trace context of the message.
+     * @param properties The properties of the message
+     */
+    void received(
+        final MessageProperties properties) {
+        this.properties.set(properties);
+    }
+
+    /**
+     * Begin processing request, in lean mode or otherwise.
+     * @throws ApplicationException if unable to begin processing the request
+     */
+    private void begin() throws ApplicationException {
+
+        if (getListener().isLeanInterception() == false) {
+            startRequest(operation);
+
+            return;
+        }
+
+        startSlice();
+    }
+
+    /**
+     * End processing request, in lean mode or otherwise.
+     * @param isException true if the response is an exception, false otherwise
+     */
+    private void end(
+        final boolean isException) {
+
+        if (getListener().isLeanInterception() == false) {
             completeRequest(isException);
+
+            return;
         }
 
+        endSlice(isException);
     }
 
     /**
@@ -112,7 +365,6 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
     public final void startRequest(
         final String operation) throws ApplicationException {
 
-        String methodName = "startRequest";
         TransactionContext transactionContext;
 
         transactionContext = TransactionContext.get();
@@ -121,6 +373,137 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
         transactionContext.setTransactionId(getTransactionId());
         transactionContext.setOperation(operation);
 
+        notifyStart(transactionContext);
+    }
+
+    /**
+     * Complete processing request. 
+     * @param isException true if the response is an exception, false otherwise
+     */
+    public final void completeRequest(
+        final boolean isException) {
+
+        TransactionContext transactionContext;
+
+        transactionContext = TransactionContext.get();
+
+        notifyComplete(transactionContext, isException);
+
+        transactionContext.reset();
+
+        TraceHeaders.clear();
+    }
+
+    /**
+     * Start processing request in lean mode.  The message is counted towards the accounting
+     * slice of the queue, and only the transaction context of the current thread is touched.
+     * A fresh transaction is started on the context, so that no state of the previous
+     * message that the thread processed carries over.
+     */
+    private void startSlice() {
+
+        TransactionContext transactionContext;
+
+        activeMessages.incrementAndGet();
+        sliceMessages.incrementAndGet();
+
+        transactionContext = TransactionContext.get();
+        transactionContext.startTransaction();
+        transactionContext.setOperation(operation);
+        transactionContext.setTransactionId(getTransactionId());
+    }
+
+    /**
+     * Complete processing request in lean mode.
+     * @param isException true if the response is an exception, false otherwise
+     */
+    private void endSlice(
+        final boolean isException) {
+
+        TransactionContext.get().reset();
+
+        TraceHeaders.clear();
+
+        if (isException == true) {
+            sliceException.set(true);
+        }
+
+        activeMessages.decrementAndGet();
+    }
+
+    /**
+     * Account for the messages which the queue has processed in lean mode.  An accounting
+     * slice is opened when messages have been processed since the last slice closed, and
+     * is closed once its accounting interval has elapsed and no message is being processed,
+     * or unconditionally when forced after the queue has been drained.  The number of
+     * messages which the slice accounts for is logged when the slice closes.
+     * Only the supervisor of the queue invokes this method, so the accounting slice lives
+     * on the transaction context of the supervisor thread.
+     * @param force true to close the slice even if its accounting interval has not elapsed, false otherwise
+     */
+    void flush(
+        final boolean force) {
+
+        String methodName = "flush";
+        long now;
+
+        if ((sliceContext == null) && (sliceMessages.get() == 0)) {
+            return;
+        }
+
+        now = System.currentTimeMillis();
+
+        if (sliceContext == null) {
+
+            sliceContext = TransactionContext.get();
+            sliceContext.startTransaction();
+            sliceContext.setTransactionId(transactionPrefix + Long.toHexString(transactionSequence.incrementAndGet()));
+            sliceContext.setOperation(operation);
+
+            try {
+
+                notifyStart(sliceContext);
+            }
+            catch (ApplicationException exception) {
+
+                sliceContext.reset();
+                sliceContext = null;
+
+                return;
+            }
+
+            sliceDeadline = now + getListener().getAccountingInterval();
+            sliceCount = 0;
+        }
+
+        sliceCount += sliceMessages.getAndSet(0);
+
+        if ((force == false) && (now < sliceDeadline)) {
+            return;
+        }
+
+        if ((force == false) && (activeMessages.get() > 0)) {
+            return;
+        }
+
+        notifyComplete(sliceContext, sliceException.getAndSet(false));
+
+        logger.debug(methodName, "Accounted for ", sliceCount, " messages of queue [", getName(), "] in transaction [", sliceContext.getTransactionId(), "].");
+
+        sliceContext.reset();
+        sliceContext = null;
+    }
+
+    /**
+     * Notify work manager that request has started.
+     * @param transactionContext The transaction context
+     * @throws ApplicationException if unable to notify the work manager
+     */
+    private void notifyStart(
+        final TransactionContext transactionContext) throws ApplicationException {
+
+        String methodName = "startRequest";
+
         try {
 
             workManager.startRequest(transactionContext);
@@ -139,16 +522,15 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
     }
 
     /**
-     * Complete processing request. 
+     * Notify work manager that request has completed.
+     * @param transactionContext The transaction context
      * @param isException true if the response is an exception, false otherwise
      */
-    public final void completeRequest(
+    private void notifyComplete(
+        final TransactionContext transactionContext,
         final boolean isException) {
 
         String methodName = "completeRequest";
-        TransactionContext transactionContext;
-
-        transactionContext = TransactionContext.get();
 
         try {
 
@@ -158,23 +540,43 @@ public class RabbitMQRequestInterceptor<T> extends RabbitMQQueue<T> {
             logger.error(methodName, "Failed to notify work manager that request has completed: ", exception.getMessage(), exception);
         }
 
-        transactionContext.reset();
     }
 
     /**
-     * Get operation.
-     * @return The operation
-     */
-    private String getOperation() {
-        return "rabbitmq/" + getName();
-    }
-
-    /**
-     * Get transaction identifier.  Generates a UUID.
+     * Get transaction identifier.  Restores the transaction identifier from the headers of the
+     * message, or reuses the correlation id of the message.  If the message carries neither,
+     * then generates a UUID, or a sequence number with a random prefix in lean mode.
      * @return The resultant transaction identifier
      */
     private String getTransactionId() {
 
+        MessageProperties properties;
+        String transactionId;
+
+        properties = this.properties.get();
+
+        if (properties != null) {
+            this.properties.set(null);
+
+            transactionId = TraceHeaders.restore(properties.getHeaders());
+
+            if (transactionId != null) {
+                return transactionId;
+            }
+
+            if (properties.getCorrelationId() != null) {
+                return properties.getCorrelationId();
+            }
+
+        }
+        else {
+            TraceHeaders.clear();
+        }
+
+        if (getListener().isLeanInterception() == true) {
+            return transactionPrefix + Long.toHexString(transactionSequence.incrementAndGet());
+        }
+
         return UUID.randomUUID().toString();
     }
 
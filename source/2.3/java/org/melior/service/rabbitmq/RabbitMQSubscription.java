@@ -0,0 +1,349 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.amqp.rabbit.connection.Connection;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * A subscription to the messages in a {@code RabbitMQQueue}.  The subscription
+ * consumes from the queue with manual acknowledgement and a prefetch count, so
+ * the RabbitMQ server never has more messages outstanding than the prefetch count.
+ * Messages are buffered until the subscriber signals demand for them, and the
+ * buffer is therefore bounded by the prefetch count too.
+ * <p>
+ * The subscription consumes on a dedicated connection, which is not pooled, so the
+ * prefetch count does not leak onto the pooled connections, and closing the connection
+ * when the subscription ends requeues the deliveries which have not been acknowledged.
+ * @author Melior
+ * @since 2.3
+ */
+class RabbitMQSubscription<T> implements Subscription {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private RabbitMQListener<T> listener;
+
+    private RabbitMQQueue<T> queue;
+
+    private Subscriber<? super Delivery<T>> subscriber;
+
+    private Queue<Delivery<T>> buffer;
+
+    private AtomicLong requested;
+
+    private AtomicInteger drains;
+
+    private volatile boolean cancelled;
+
+    private volatile Throwable error;
+
+    private Connection connection;
+
+    private Channel channel;
+
+    private String consumerTag;
+
+    /**
+     * Constructor.
+     * @param listener The listener
+     * @param queue The queue
+     * @param subscriber The subscriber
+     */
+    RabbitMQSubscription(
+        final RabbitMQListener<T> listener,
+        final RabbitMQQueue<T> queue,
+        final Subscriber<? super Delivery<T>> subscriber) {
+
+        super();
+
+        this.listener = listener;
+
+        this.queue = queue;
+
+        this.subscriber = subscriber;
+
+        buffer = new ConcurrentLinkedQueue<Delivery<T>>();
+
+        requested = new AtomicLong();
+
+        drains = new AtomicInteger();
+    }
+
+    /**
+     * Start consuming from the queue on behalf of the subscriber.
+     */
+    void start() {
+
+        String methodName = "start";
+
+        subscriber.onSubscribe(this);
+
+        if (cancelled == true) {
+            return;
+        }
+
+        try {
+
+            synchronized (this) {
+
+                connection = listener.createConnection(queue);
+                channel = connection.createChannel(false);
+                channel.basicQos(listener.getPrefetch(queue));
+                consumerTag = channel.basicConsume(queue.getName(), false, queue.getConsumerArguments(), new Consumer(channel));
+            }
+
+            logger.debug(methodName, "Subscribed to queue [", queue.getName(), "].");
+
+            drain();
+        }
+        catch (Throwable exception) {
+            logger.error(methodName, "Failed to subscribe to queue: ", exception.getMessage(), exception);
+
+            terminate(exception);
+        }
+
+    }
+
+    /**
+     * Request more messages.
+     * @param n The number of messages
+     */
+    public void request(
+        final long n) {
+
+        if (n <= 0) {
+            terminate(new IllegalArgumentException("Number of messages requested must be positive."));
+
+            return;
+        }
+
+        requested.getAndUpdate(current -> (current + n < 0) ? Long.MAX_VALUE : current + n);
+
+        drain();
+    }
+
+    /**
+     * Cancel subscription.  Any messages that have been delivered by the RabbitMQ
+     * server but not yet acknowledged by the subscriber are requeued.  The consumer
+     * is released by the thread which delivers messages, so that no message reaches
+     * the subscriber after the subscription has been cancelled.
+     */
+    public void cancel() {
+
+        if (cancelled == true) {
+            return;
+        }
+
+        cancelled = true;
+
+        drain();
+    }
+
+    /**
+     * Terminate subscription with an error.
+     * @param exception The error
+     */
+    private void terminate(
+        final Throwable exception) {
+
+        if (error == null) {
+            error = exception;
+        }
+
+        drain();
+    }
+
+    /**
+     * Deliver buffered messages to the subscriber, as far as demand allows, and release
+     * the consumer once the subscription has been cancelled or has failed.  Only one thread
+     * delivers at a time, so signals to the subscriber and the release of the consumer are
+     * serialized.
+     */
+    private void drain() {
+
+        int missed;
+        Delivery<T> delivery;
+
+        if (drains.getAndIncrement() != 0) {
+            return;
+        }
+
+        missed = 1;
+
+        do {
+
+            while ((cancelled == false) && (requested.get() > 0)) {
+
+                delivery = buffer.poll();
+
+                if (delivery == null) {
+                    break;
+                }
+
+                subscriber.onNext(delivery);
+
+                if (requested.get() != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+
+            }
+
+            if ((cancelled == false) && (error != null)) {
+
+                cancelled = true;
+
+                release();
+
+                subscriber.onError(error);
+            }
+            else if (cancelled == true) {
+
+                release();
+            }
+
+            missed = drains.addAndGet(-missed);
+        }
+        while (missed != 0);
+
+    }
+
+    /**
+     * Cancel the consumer, requeue undelivered messages and close the connection, which
+     * requeues the messages that were delivered to the subscriber but not acknowledged.
+     * Messages which are buffered after the connection has been closed are discarded, as
+     * the RabbitMQ server has already requeued them.
+     */
+    private synchronized void release() {
+
+        String methodName = "release";
+        Delivery<T> delivery;
+
+        if (connection == null) {
+            buffer.clear();
+
+            return;
+        }
+
+        try {
+
+            if ((consumerTag != null) && (channel.isOpen() == true)) {
+                channel.basicCancel(consumerTag);
+            }
+
+            while ((delivery = buffer.poll()) != null) {
+                delivery.requeue();
+            }
+
+        }
+        catch (Exception exception) {
+            logger.warn(methodName, "Failed to cancel consumer: ", exception.getMessage());
+        }
+        finally {
+
+            connection.close();
+            connection = null;
+        }
+
+    }
+
+    /**
+     * Consumer which buffers deliveries for the subscriber.
+     */
+    private class Consumer extends DefaultConsumer {
+
+        /**
+         * Constructor.
+         * @param channel The channel
+         */
+        Consumer(
+            final Channel channel) {
+
+            super(channel);
+        }
+
+        /**
+         * Handle delivery.
+         * @param consumerTag The consumer tag
+         * @param envelope The envelope
+         * @param properties The message properties
+         * @param body The message body
+         */
+        public void handleDelivery(
+            final String consumerTag,
+            final Envelope envelope,
+            final AMQP.BasicProperties properties,
+            final byte[] body) {
+
+            String methodName = "handleDelivery";
+            T message;
+
+            queue.getTotalMessages().increment();
+
+            try {
+
+                message = listener.deserialize(body);
+            }
+            catch (Exception exception) {
+                logger.error(methodName, "Failed to deserialize message: ", exception.getMessage(), exception);
+
+                queue.getFailedMessages().increment();
+
+                try {
+
+                    getChannel().basicNack(envelope.getDeliveryTag(), false, false);
+                }
+                catch (Exception exception2) {
+                    logger.error(methodName, "Failed to reject message: ", exception2.getMessage(), exception2);
+                }
+
+                return;
+            }
+
+            buffer.offer(new Delivery<T>(queue, getChannel(), envelope.getDeliveryTag(), properties.getHeaders(), message));
+
+            drain();
+        }
+
+        /**
+         * Handle cancellation of the consumer by the RabbitMQ server.
+         * @param consumerTag The consumer tag
+         */
+        public void handleCancel(
+            final String consumerTag) {
+
+            terminate(new IllegalStateException("Consumer was cancelled by the RabbitMQ server."));
+        }
+
+        /**
+         * Handle shutdown of the channel or connection.
+         * @param consumerTag The consumer tag
+         * @param signal The shutdown signal
+         */
+        public void handleShutdownSignal(
+            final String consumerTag,
+            final ShutdownSignalException signal) {
+
+            terminate(signal);
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+
+/**
+ * A token bucket rate limiter which limits the rate at which messages are processed,
+ * both in messages per second and in bytes per second.  Each bucket holds up to
+ * the burst allowance of tokens, which allows short bursts above the rate.
+ * <p>
+ * Tokens are reserved rather than waited for.  If there are not enough tokens in
+ * a bucket, then the bucket goes into debt and the caller is told how long to
+ * defer the message for, so that no thread has to block while it is throttled.
+ * @author Melior
+ * @since 2.3
+ */
+class RateLimiter {
+
+    private Bucket messageBucket;
+
+    private Bucket byteBucket;
+
+    /**
+     * Constructor.
+     * @param messagesPerSecond The maximum number of messages per second, or 0 for no limit
+     * @param bytesPerSecond The maximum number of bytes per second, or 0 for no limit
+     * @param burst The burst allowance, in seconds at the maximum rate
+     */
+    RateLimiter(
+        final double messagesPerSecond,
+        final double bytesPerSecond,
+        final double burst) {
+
+        super();
+
+        messageBucket = new Bucket(messagesPerSecond, burst);
+
+        byteBucket = new Bucket(bytesPerSecond, burst);
+    }
+
+    /**
+     * Reserve tokens for a message.
+     * @param bytes The size of the message in bytes
+     * @return The amount of time in nanoseconds to defer the message for
+     */
+    long reserve(
+        final int bytes) {
+
+        return reserve(1, bytes);
+    }
+
+    /**
+     * Reserve tokens for a batch of messages.
+     * @param messages The number of messages
+     * @param bytes The total size of the messages in bytes
+     * @return The amount of time in nanoseconds to defer the batch for
+     */
+    long reserve(
+        final int messages,
+        final long bytes) {
+
+        return Math.max(messageBucket.reserve(messages), byteBucket.reserve(bytes));
+    }
+
+    /**
+     * A single token bucket.
+     */
+    private static class Bucket {
+
+        private double rate;
+
+        private double capacity;
+
+        private double tokens;
+
+        private long lastRefill;
+
+        /**
+         * Constructor.
+         * @param rate The number of tokens added per second, or 0 for no limit
+         * @param burst The burst allowance, in seconds at the rate
+         */
+        Bucket(
+            final double rate,
+            final double burst) {
+
+            super();
+
+            this.rate = rate;
+
+            this.capacity = Math.max(1, rate * burst);
+
+            this.tokens = capacity;
+
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Reserve tokens.
+         * @param permits The number of tokens
+         * @return The amount of time in nanoseconds until the tokens are available
+         */
+        synchronized long reserve(
+            final double permits) {
+
+            long now;
+
+            if (rate <= 0) {
+                return 0;
+            }
+
+            now = System.nanoTime();
+
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1_000_000_000d);
+            lastRefill = now;
+
+            tokens -= permits;
+
+            return (tokens >= 0) ? 0 : (long) (-tokens * 1_000_000_000d / rate);
+        }
+
+    }
+
+}
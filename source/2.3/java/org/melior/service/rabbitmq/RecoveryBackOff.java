@@ -0,0 +1,70 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+
+/**
+ * A back-off policy for the recovery of RabbitMQ consumers.  The first attempt
+ * to recover is made after a short interval, and the interval doubles with each
+ * further attempt up to a maximum.  Each interval is jittered by up to half of
+ * its length, so that the consumers of many queues and service instances do not
+ * reconnect to the RabbitMQ server in lockstep after a node fails over.
+ * @author Melior
+ * @since 2.3
+ */
+class RecoveryBackOff implements BackOff {
+
+    private long initialInterval;
+
+    private long maximumInterval;
+
+    /**
+     * Constructor.
+     * @param initialInterval The interval before the first attempt, in milliseconds
+     * @param maximumInterval The maximum interval between attempts, in milliseconds
+     */
+    RecoveryBackOff(
+        final long initialInterval,
+        final long maximumInterval) {
+
+        super();
+
+        this.initialInterval = Math.max(1, initialInterval);
+
+        this.maximumInterval = Math.max(this.initialInterval, maximumInterval);
+    }
+
+    /**
+     * Start back-off execution.
+     * @return The back-off execution
+     */
+    public BackOffExecution start() {
+
+        return new BackOffExecution() {
+
+            private long interval = initialInterval;
+
+            public long nextBackOff() {
+
+                long nextInterval;
+
+                nextInterval = interval - ThreadLocalRandom.current().nextLong(interval / 2 + 1);
+
+                interval = Math.min(interval * 2, maximumInterval);
+
+                return nextInterval;
+            }
+
+        };
+
+    }
+
+}
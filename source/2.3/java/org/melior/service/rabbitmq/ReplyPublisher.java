@@ -0,0 +1,346 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import org.melior.client.exception.RemotingException;
+import org.melior.client.rabbitmq.RabbitMQClient;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.Connection;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Publishes the replies of a {@code RabbitMQListener} to the reply queues of the
+ * requests, with publisher confirms.  All replies share a single publisher channel,
+ * and each reply waits until the RabbitMQ server has confirmed it.  The RabbitMQ
+ * server confirms replies in batches, so concurrent replies share the round trip
+ * of a single confirmation.
+ * <p>
+ * The channel is opened on a dedicated connection, which is not taken from the
+ * connection pool, because confirm mode cannot be turned off on a channel once it
+ * is selected.  If the channel is shut down, then the replies which are awaiting
+ * confirmation fail, and a new connection is opened for the next reply.  The
+ * connection is closed when the publisher is closed.
+ * @author Melior
+ * @since 2.3
+ */
+class ReplyPublisher {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private RabbitMQClient rabbitMQClient;
+
+    private long timeout;
+
+    private ReplyChannel replyChannel;
+
+    /**
+     * Constructor.
+     * @param rabbitMQClient The RabbitMQ client
+     * @param timeout The amount of time to wait for a reply to be confirmed, in milliseconds
+     */
+    ReplyPublisher(
+        final RabbitMQClient rabbitMQClient,
+        final long timeout) {
+
+        super();
+
+        this.rabbitMQClient = rabbitMQClient;
+
+        this.timeout = timeout;
+    }
+
+    /**
+     * Publish reply and wait for it to be confirmed.
+     * @param replyTo The reply queue
+     * @param correlationId The correlation identifier of the request
+     * @param body The body of the reply
+     * @throws IOException if the reply could not be published or was rejected by the RabbitMQ server
+     * @throws RemotingException if unable to open the reply channel
+     */
+    void publish(
+        final String replyTo,
+        final String correlationId,
+        final byte[] body) throws IOException, RemotingException {
+
+        AMQP.BasicProperties properties;
+        ReplyChannel target;
+        long sequenceNumber;
+
+        properties = new AMQP.BasicProperties.Builder()
+            .contentType("text/plain")
+            .contentEncoding("UTF-8")
+            .correlationId(correlationId)
+            .build();
+
+        synchronized (this) {
+
+            if ((replyChannel == null) || (replyChannel.isClosed() == true)) {
+                replyChannel = new ReplyChannel(rabbitMQClient.createConnection());
+            }
+
+            target = replyChannel;
+
+            sequenceNumber = target.channel.getNextPublishSeqNo();
+            target.track(sequenceNumber);
+
+            target.channel.basicPublish("", replyTo, properties, body);
+        }
+
+        target.await(sequenceNumber, System.currentTimeMillis() + timeout);
+    }
+
+    /**
+     * Close publisher.  The replies which are awaiting confirmation fail, and the
+     * connection of the reply channel is closed.
+     */
+    void close() {
+
+        ReplyChannel target;
+
+        synchronized (this) {
+
+            target = replyChannel;
+
+            replyChannel = null;
+        }
+
+        if (target != null) {
+            target.close();
+        }
+
+    }
+
+    /**
+     * A publisher channel in confirm mode on a dedicated connection, and the
+     * replies which are awaiting confirmation on it.
+     */
+    private class ReplyChannel implements ConfirmListener, ShutdownListener {
+
+        private Connection connection;
+
+        private Channel channel;
+
+        private TreeSet<Long> outstanding;
+
+        private Set<Long> rejected;
+
+        private boolean isClosed;
+
+        /**
+         * Constructor.
+         * @param connection The dedicated publisher connection
+         * @throws AmqpException if unable to open the channel
+         */
+        ReplyChannel(
+            final Connection connection) throws AmqpException {
+
+            super();
+
+            this.connection = connection;
+
+            outstanding = new TreeSet<Long>();
+            rejected = new HashSet<Long>();
+
+            try {
+
+                channel = connection.createChannel(false);
+                channel.confirmSelect();
+                channel.addConfirmListener(this);
+                channel.addShutdownListener(this);
+            }
+            catch (Exception exception) {
+
+                connection.close();
+
+                throw new AmqpException("Failed to open reply channel: " + exception.getMessage(), exception);
+            }
+
+        }
+
+        /**
+         * Track reply which is about to be published.
+         * @param sequenceNumber The sequence number of the reply
+         */
+        synchronized void track(
+            final long sequenceNumber) {
+            outstanding.add(sequenceNumber);
+        }
+
+        /**
+         * Wait for reply to be confirmed.
+         * @param sequenceNumber The sequence number of the reply
+         * @param deadline The time at which to stop waiting, in milliseconds since the epoch
+         * @throws IOException if the reply was rejected, was not confirmed in time, or the channel was shut down
+         */
+        synchronized void await(
+            final long sequenceNumber,
+            final long deadline) throws IOException {
+
+            long remaining;
+
+            while ((outstanding.contains(sequenceNumber) == true) && (isClosed == false)) {
+
+                remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    outstanding.remove(sequenceNumber);
+
+                    throw new IOException("Reply was not confirmed in time.");
+                }
+
+                try {
+
+                    wait(remaining);
+                }
+                catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+
+                    throw new IOException("Interrupted while waiting for reply to be confirmed.");
+                }
+
+            }
+
+            if (outstanding.remove(sequenceNumber) == true) {
+                throw new IOException("Reply channel was shut down before the reply was confirmed.");
+            }
+
+            if (rejected.remove(sequenceNumber) == true) {
+                throw new IOException("Reply was rejected by the RabbitMQ server.");
+            }
+
+        }
+
+        /**
+         * Check whether channel has been shut down.
+         * @return true if the channel has been shut down, false otherwise
+         */
+        synchronized boolean isClosed() {
+            return isClosed;
+        }
+
+        /**
+         * Close channel and its connection.
+         */
+        void close() {
+
+            String methodName = "close";
+
+            synchronized (this) {
+
+                isClosed = true;
+
+                notifyAll();
+            }
+
+            try {
+
+                channel.removeShutdownListener(this);
+
+                connection.close();
+            }
+            catch (Exception exception) {
+                logger.warn(methodName, "Failed to close reply connection: ", exception.getMessage());
+            }
+
+        }
+
+        /**
+         * Handle confirmation of replies.
+         * @param deliveryTag The sequence number of the reply
+         * @param multiple true if all replies up to the sequence number are confirmed, false otherwise
+         */
+        public synchronized void handleAck(
+            final long deliveryTag,
+            final boolean multiple) {
+
+            confirm(deliveryTag, multiple);
+
+            notifyAll();
+        }
+
+        /**
+         * Handle rejection of replies.
+         * @param deliveryTag The sequence number of the reply
+         * @param multiple true if all replies up to the sequence number are rejected, false otherwise
+         */
+        public synchronized void handleNack(
+            final long deliveryTag,
+            final boolean multiple) {
+
+            if (multiple == true) {
+                rejected.addAll(outstanding.headSet(deliveryTag, true));
+            }
+            else if (outstanding.contains(deliveryTag) == true) {
+                rejected.add(deliveryTag);
+            }
+
+            confirm(deliveryTag, multiple);
+
+            notifyAll();
+        }
+
+        /**
+         * Remove confirmed replies from the outstanding replies.
+         * @param deliveryTag The sequence number of the reply
+         * @param multiple true if all replies up to the sequence number are confirmed, false otherwise
+         */
+        private void confirm(
+            final long deliveryTag,
+            final boolean multiple) {
+
+            if (multiple == true) {
+                outstanding.headSet(deliveryTag, true).clear();
+            }
+            else {
+                outstanding.remove(deliveryTag);
+            }
+
+        }
+
+        /**
+         * Handle shutdown of channel.  The replies which are awaiting confirmation fail,
+         * and the connection is closed.
+         * @param cause The cause of the shutdown
+         */
+        public void shutdownCompleted(
+            final ShutdownSignalException cause) {
+
+            String methodName = "shutdownCompleted";
+
+            synchronized (this) {
+
+                isClosed = true;
+
+                notifyAll();
+            }
+
+            logger.warn(methodName, "Reply channel was shut down: ", cause.getMessage());
+
+            try {
+
+                connection.close();
+            }
+            catch (Exception exception) {
+                logger.warn(methodName, "Failed to close reply connection: ", exception.getMessage());
+            }
+
+        }
+
+    }
+
+}
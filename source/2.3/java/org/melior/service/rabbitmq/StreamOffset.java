@@ -0,0 +1,140 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.Date;
+
+/**
+ * The position in a RabbitMQ stream queue from which a {@code RabbitMQListener}
+ * starts consuming.  The position is passed to the RabbitMQ server in the
+ * {@code x-stream-offset} consumer argument.
+ * <p>
+ * A stored position is resolved from the {@code OffsetStore} of the queue when
+ * the consumer starts.  If no offset has been stored yet, then the fallback
+ * position is used instead.
+ * @author Melior
+ * @since 2.3
+ * @see OffsetStore
+ */
+public class StreamOffset {
+
+    private Object value;
+
+    private StreamOffset fallback;
+
+    /**
+     * Constructor.
+     * @param value The value of the x-stream-offset argument
+     * @param fallback The fallback position for a stored offset
+     */
+    private StreamOffset(
+        final Object value,
+        final StreamOffset fallback) {
+
+        super();
+
+        this.value = value;
+
+        this.fallback = fallback;
+    }
+
+    /**
+     * Start from the first message available in the stream.
+     * @return The stream offset
+     */
+    public static StreamOffset first() {
+
+        return new StreamOffset("first", null);
+    }
+
+    /**
+     * Start from the last chunk of messages written to the stream.
+     * @return The stream offset
+     */
+    public static StreamOffset last() {
+
+        return new StreamOffset("last", null);
+    }
+
+    /**
+     * Start from the next message written to the stream.
+     * @return The stream offset
+     */
+    public static StreamOffset next() {
+
+        return new StreamOffset("next", null);
+    }
+
+    /**
+     * Start from the message at the given offset.
+     * @param offset The offset
+     * @return The stream offset
+     */
+    public static StreamOffset offset(
+        final long offset) {
+
+        return new StreamOffset(Long.valueOf(offset), null);
+    }
+
+    /**
+     * Start from the first message written to the stream at or after the given time.
+     * @param timestamp The timestamp
+     * @return The stream offset
+     */
+    public static StreamOffset timestamp(
+        final Date timestamp) {
+
+        return new StreamOffset(timestamp, null);
+    }
+
+    /**
+     * Start from the message after the last offset that was stored in the offset store.
+     * Start from the first message in the stream if no offset has been stored yet.
+     * @return The stream offset
+     */
+    public static StreamOffset stored() {
+
+        return stored(first());
+    }
+
+    /**
+     * Start from the message after the last offset that was stored in the offset store.
+     * @param fallback The position to start from if no offset has been stored yet
+     * @return The stream offset
+     */
+    public static StreamOffset stored(
+        final StreamOffset fallback) {
+
+        return new StreamOffset(null, (fallback == null) ? first() : fallback);
+    }
+
+    /**
+     * Check whether position is resolved from the offset store.
+     * @return true if the position is resolved from the offset store, false otherwise
+     */
+    boolean isStored() {
+        return fallback != null;
+    }
+
+    /**
+     * Get value of x-stream-offset argument.
+     * @return The value of the x-stream-offset argument
+     */
+    Object getValue() {
+        return value;
+    }
+
+    /**
+     * Get fallback position.
+     * @return The fallback position
+     */
+    StreamOffset getFallback() {
+        return fallback;
+    }
+
+}
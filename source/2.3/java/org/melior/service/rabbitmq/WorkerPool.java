@@ -0,0 +1,229 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import org.melior.logging.core.Logger;
+import org.melior.logging.core.LoggerFactory;
+import org.melior.util.thread.DaemonThread;
+
+/**
+ * A pool of worker threads which is shared by all the queues that are registered
+ * with a {@code RabbitMQListener}.  The consumers of each queue hand their deliveries
+ * to the pool, and the workers take deliveries from the queues in proportion to
+ * the weights of the queues, using smooth weighted round-robin scheduling.
+ * <p>
+ * Only queues with pending deliveries take part in the scheduling, so a busy
+ * queue may use the full capacity of the pool while the other queues are idle.
+ * <p>
+ * The pool may be resized while it is running.  Surplus workers retire once
+ * they have finished processing their current delivery.
+ * @author Melior
+ * @since 2.3
+ */
+class WorkerPool {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private Map<RabbitMQQueue<?>, Lane> laneMap;
+
+    private List<Lane> lanes;
+
+    private int size;
+
+    private int running;
+
+    /**
+     * Constructor.
+     * @param workers The number of worker threads
+     */
+    WorkerPool(
+        final int workers) {
+
+        super();
+
+        laneMap = new IdentityHashMap<RabbitMQQueue<?>, Lane>();
+
+        lanes = new ArrayList<Lane>();
+
+        resize(workers);
+    }
+
+    /**
+     * Resize pool.
+     * @param workers The number of worker threads
+     */
+    synchronized void resize(
+        final int workers) {
+
+        size = Math.max(1, workers);
+
+        while (running < size) {
+            running++;
+
+            DaemonThread.create(() -> work());
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Get size of pool.
+     * @return The number of worker threads
+     */
+    synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Submit delivery for processing.
+     * @param queue The queue from which the delivery was received
+     * @param task The task which processes the delivery
+     */
+    synchronized void submit(
+        final RabbitMQQueue<?> queue,
+        final Runnable task) {
+
+        Lane lane;
+
+        lane = laneMap.get(queue);
+
+        if (lane == null) {
+
+            lane = new Lane(queue.getWeight());
+
+            laneMap.put(queue, lane);
+            lanes.add(lane);
+        }
+
+        lane.tasks.add(task);
+
+        notify();
+    }
+
+    /**
+     * Take deliveries from the queues and process them.
+     */
+    private void work() {
+
+        String methodName = "work";
+        Runnable task;
+
+        while (retire() == false) {
+
+            task = take();
+
+            if (task == null) {
+                continue;
+            }
+
+            try {
+
+                task.run();
+            }
+            catch (Throwable exception) {
+                logger.error(methodName, "Failed to process delivery: ", exception.getMessage(), exception);
+            }
+
+        }
+
+    }
+
+    /**
+     * Retire worker if the pool has more workers than its size.
+     * @return true if the worker must retire, false otherwise
+     */
+    private synchronized boolean retire() {
+
+        if (running <= size) {
+            return false;
+        }
+
+        running--;
+
+        return true;
+    }
+
+    /**
+     * Take the next delivery, waiting for a short while if there is none.
+     * @return The task which processes the delivery, or null if there is none
+     */
+    private synchronized Runnable take() {
+
+        int totalWeight;
+        Lane selected;
+
+        totalWeight = 0;
+        selected = null;
+
+        for (Lane lane : lanes) {
+
+            if (lane.tasks.isEmpty() == true) {
+                continue;
+            }
+
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+
+            if ((selected == null) || (lane.currentWeight > selected.currentWeight)) {
+                selected = lane;
+            }
+
+        }
+
+        if (selected == null) {
+
+            try {
+
+                wait(100);
+            }
+            catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+
+            return null;
+        }
+
+        selected.currentWeight -= totalWeight;
+
+        return selected.tasks.poll();
+    }
+
+    /**
+     * The pending deliveries of a single queue.
+     */
+    private static class Lane {
+
+        private int weight;
+
+        private int currentWeight;
+
+        private Queue<Runnable> tasks;
+
+        /**
+         * Constructor.
+         * @param weight The weight of the queue
+         */
+        Lane(
+            final int weight) {
+
+            super();
+
+            this.weight = weight;
+
+            tasks = new ArrayDeque<Runnable>();
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the resolution of routing keys by a {@code RoutingKeyTemplate}.
+ * @author Melior
+ * @since 2.3
+ */
+public class RoutingKeyTemplateTest {
+
+    /**
+     * The placeholders are replaced with the properties of the message, which are also added to the headers.
+     */
+    @Test
+    public void resolvesGettersAndFields() {
+
+        Map<String, Object> headers;
+
+        headers = new HashMap<String, Object>();
+
+        assertEquals("orders.retail.7.true", new RoutingKeyTemplate("orders.{category}.{ count }.{urgent}").resolve(new Order("retail", 7), headers));
+        assertEquals("retail", headers.get("category"));
+        assertEquals(7, headers.get("count"));
+        assertEquals(true, headers.get("urgent"));
+    }
+
+    /**
+     * The placeholders of a map message name keys in the map.
+     */
+    @Test
+    public void resolvesMapKeys() {
+
+        Map<String, Object> message;
+
+        message = new HashMap<String, Object>();
+        message.put("category", "retail");
+        message.put("type", 3);
+
+        assertEquals("retail.3", new RoutingKeyTemplate("{category}.{type}").resolve(message, null));
+    }
+
+    /**
+     * A message with a null property is rejected, rather than routed with an empty segment.
+     */
+    @Test
+    public void rejectsNullProperty() {
+
+        RoutingKeyTemplate template;
+
+        template = new RoutingKeyTemplate("{category}.{type}");
+
+        assertThrows(IllegalArgumentException.class, () -> template.resolve(new Order(null, 1), null));
+        assertThrows(IllegalArgumentException.class, () -> template.resolve(new HashMap<String, Object>(), null));
+    }
+
+    /**
+     * The public members of a private class are read.
+     */
+    @Test
+    public void readsPrivateClass() {
+
+        assertEquals("secret", new RoutingKeyTemplate("{name}").resolve(new Hidden(), null));
+    }
+
+    /**
+     * A property without a public accessor is reported when the message is resolved.
+     */
+    @Test
+    public void rejectsMissingProperty() {
+
+        assertThrows(IllegalArgumentException.class, () -> new RoutingKeyTemplate("{missing}").resolve(new Order("retail", 1), null));
+    }
+
+    /**
+     * A template with an unterminated or empty placeholder is malformed.
+     */
+    @Test
+    public void rejectsMalformedTemplate() {
+
+        assertThrows(IllegalArgumentException.class, () -> new RoutingKeyTemplate("orders.{category"));
+        assertThrows(IllegalArgumentException.class, () -> new RoutingKeyTemplate("orders.{}"));
+    }
+
+    /**
+     * A message with a getter, a boolean getter and a public field.
+     */
+    public static class Order {
+
+        public int count;
+
+        private String category;
+
+        /**
+         * Constructor.
+         * @param category The category
+         * @param count The count
+         */
+        Order(
+            final String category,
+            final int count) {
+
+            super();
+
+            this.category = category;
+
+            this.count = count;
+        }
+
+        /**
+         * Get category.
+         * @return The category
+         */
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * Check whether the order is urgent.
+         * @return true
+         */
+        public boolean isUrgent() {
+            return true;
+        }
+
+    }
+
+    /**
+     * A message class which is not public.
+     */
+    private static class Hidden {
+
+        /**
+         * Get name.
+         * @return The name
+         */
+        public String getName() {
+            return "secret";
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.rabbitmq;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the formatting and parsing of the trace headers by {@code TraceHeaders}.
+ * @author Melior
+ * @since 2.3
+ */
+public class TraceHeadersTest {
+
+    private static final String TRACEPARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    /**
+     * Clear trace context of the test thread.
+     */
+    @AfterEach
+    public void tearDown() {
+
+        TraceHeaders.clear();
+    }
+
+    /**
+     * A new trace is formatted as version, trace identifier, parent identifier and flags.
+     */
+    @Test
+    public void formatsNewTrace() {
+
+        String traceparent;
+
+        traceparent = TraceHeaders.next(null);
+
+        assertTrue(traceparent.matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"), traceparent);
+        assertFalse(traceparent.substring(36, 52).equals("0000000000000000"), traceparent);
+    }
+
+    /**
+     * The trace identifier of a new trace is derived from a transaction identifier which is a UUID.
+     */
+    @Test
+    public void derivesTraceFromUuid() {
+
+        String traceparent;
+
+        traceparent = TraceHeaders.next("4BF92F35-77B3-4DA6-A3CE-929D0E0E4736");
+
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", traceparent.substring(3, 35));
+    }
+
+    /**
+     * A transaction identifier which is not a UUID gets a random trace identifier.
+     */
+    @Test
+    public void generatesTraceForOtherIdentifier() {
+
+        String traceparent;
+
+        traceparent = TraceHeaders.next("4bf92f35-77b3-4da6-a3ce-929d0e0e473g");
+
+        assertTrue(traceparent.matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"), traceparent);
+        assertFalse(traceparent.substring(3, 35).equals("4bf92f3577b34da6a3ce929d0e0e473g"), traceparent);
+    }
+
+    /**
+     * A restored trace is continued with the same trace identifier and flags, and a new parent identifier.
+     */
+    @Test
+    public void continuesRestoredTrace() {
+
+        Map<String, Object> headers;
+        String traceparent;
+
+        headers = new HashMap<String, Object>();
+        headers.put(TraceHeaders.TRACEPARENT, TRACEPARENT);
+        headers.put(TraceHeaders.TRANSACTION_ID, "abc");
+
+        assertEquals("abc", TraceHeaders.restore(headers));
+
+        traceparent = TraceHeaders.next("abc");
+
+        assertEquals(TRACEPARENT.substring(0, 36), traceparent.substring(0, 36));
+        assertEquals(TRACEPARENT.substring(52), traceparent.substring(52));
+        assertFalse(traceparent.substring(36, 52).equals(TRACEPARENT.substring(36, 52)), traceparent);
+    }
+
+    /**
+     * A malformed trace context is ignored, and a new trace is started.
+     */
+    @Test
+    public void ignoresMalformedTrace() {
+
+        Map<String, Object> headers;
+
+        headers = new HashMap<String, Object>();
+        headers.put(TraceHeaders.TRACEPARENT, "01-" + TRACEPARENT.substring(3));
+
+        assertNull(TraceHeaders.restore(headers));
+        assertFalse(TraceHeaders.next(null).startsWith(TRACEPARENT.substring(0, 35)));
+
+        headers.put(TraceHeaders.TRACEPARENT, TRACEPARENT.substring(1));
+
+        TraceHeaders.restore(headers);
+
+        assertFalse(TraceHeaders.next(null).contains(TRACEPARENT.substring(3, 35)));
+    }
+
+    /**
+     * The injected headers carry the transaction identifier and the trace context, and
+     * clearing the trace context of the thread starts a new trace.
+     */
+    @Test
+    public void injectsHeaders() {
+
+        Map<String, Object> headers;
+
+        headers = new HashMap<String, Object>();
+        headers.put(TraceHeaders.TRACEPARENT, TRACEPARENT);
+
+        TraceHeaders.restore(headers);
+        TraceHeaders.clear();
+
+        headers = new HashMap<String, Object>();
+
+        TraceHeaders.inject(headers, "abc");
+
+        assertEquals("abc", headers.get(TraceHeaders.TRANSACTION_ID));
+        assertTrue(((String) headers.get(TraceHeaders.TRACEPARENT)).matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"));
+        assertFalse(((String) headers.get(TraceHeaders.TRACEPARENT)).contains(TRACEPARENT.substring(3, 35)));
+
+        headers = new HashMap<String, Object>();
+
+        TraceHeaders.inject(headers, null);
+
+        assertFalse(headers.containsKey(TraceHeaders.TRANSACTION_ID));
+    }
+
+}
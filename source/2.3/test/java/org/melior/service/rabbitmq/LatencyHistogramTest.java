@@ -0,0 +1,133 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the bucket bounds and percentiles of a {@code LatencyHistogram}.
+ * @author Melior
+ * @since 2.3
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * An empty histogram reports zero for every statistic.
+     */
+    @Test
+    public void reportsZeroWhenEmpty() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMaximum());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    /**
+     * Small values have a bucket each, so their percentiles are exact.
+     */
+    @Test
+    public void isExactForSmallValues() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 0; value < 64; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(31, histogram.getPercentile(50));
+        assertEquals(63, histogram.getPercentile(100));
+    }
+
+    /**
+     * The percentile of a single value is never below the value, and is above it
+     * by no more than the width of its bucket.
+     */
+    @Test
+    public void boundsBucketError() {
+
+        LatencyHistogram histogram;
+        long estimate;
+
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+
+            estimate = histogram.getPercentile(50);
+
+            assertTrue((estimate >= value) && (estimate - value <= Math.max(1, value / 32)), "value " + value + ", estimate " + estimate);
+        }
+
+    }
+
+    /**
+     * The values at the edges of a bucket fall in the same bucket, and the next value
+     * falls in the next bucket.
+     */
+    @Test
+    public void splitsBucketsAtPowersOfTwo() {
+
+        LatencyHistogram histogram;
+
+        histogram = new LatencyHistogram();
+        histogram.record(1024);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1055, histogram.getPercentile(50));
+
+        histogram = new LatencyHistogram();
+        histogram.record(1055);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1055, histogram.getPercentile(50));
+
+        histogram = new LatencyHistogram();
+        histogram.record(1056);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1087, histogram.getPercentile(50));
+    }
+
+    /**
+     * The percentile is capped at the maximum, the mean is exact, and negative values are recorded as zero.
+     */
+    @Test
+    public void capsAtMaximum() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5);
+        histogram.record(1000);
+
+        assertEquals(1000, histogram.getPercentile(100));
+        assertEquals(1000, histogram.getMaximum());
+        assertEquals(500, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, bucketOfMaximum());
+    }
+
+    /**
+     * Get percentile of the largest value which may be recorded.
+     * @return The percentile
+     */
+    private long bucketOfMaximum() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(Long.MAX_VALUE);
+
+        return histogram.getPercentile(100);
+    }
+
+}
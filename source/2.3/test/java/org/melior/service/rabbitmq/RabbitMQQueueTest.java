@@ -0,0 +1,172 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Tests the low watermark of the offsets of a {@code RabbitMQQueue} which is consumed as a stream queue.
+ * @author Melior
+ * @since 2.3
+ */
+public class RabbitMQQueueTest {
+
+    private Map<String, Long> offsets;
+
+    private RabbitMQQueue<String> queue;
+
+    /**
+     * Create stream queue which checkpoints after every message.
+     * @throws Exception if unable to create the queue
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+
+        offsets = new HashMap<String, Long>();
+
+        queue = new RabbitMQQueue<String>(null, "stream", 1)
+            .stream(StreamOffset.first())
+            .checkpoint(new OffsetStore() {
+
+                public Long load(
+                    final String queueName) {
+                    return offsets.get(queueName);
+                }
+
+                public void store(
+                    final String queueName,
+                    final long offset) {
+                    offsets.put(queueName, offset);
+                }
+
+            }, 0, TimeUnit.MILLISECONDS);
+
+        queue.getConsumerArguments();
+    }
+
+    /**
+     * Messages which complete in order advance the watermark to the last of them.
+     */
+    @Test
+    public void advancesInOrder() {
+
+        track(0, 1, 2);
+
+        queue.commit(message(0));
+        queue.commit(message(1));
+        queue.commit(message(2));
+
+        assertEquals(Long.valueOf(2), offsets.get("stream"));
+    }
+
+    /**
+     * A message in flight holds the watermark back, until it completes.
+     */
+    @Test
+    public void holdsBackBehindMessageInFlight() {
+
+        track(0, 1, 2);
+
+        queue.commit(message(0));
+        queue.commit(message(2));
+
+        assertEquals(Long.valueOf(0), offsets.get("stream"));
+
+        queue.commit(message(1));
+
+        assertEquals(Long.valueOf(2), offsets.get("stream"));
+    }
+
+    /**
+     * A failed message does not pin the watermark, as the stream does not deliver it again.
+     */
+    @Test
+    public void skipsFailedMessage() {
+
+        track(0, 1, 2);
+
+        queue.commit(message(0));
+        queue.fail(message(1));
+        queue.commit(message(2));
+
+        assertEquals(Long.valueOf(2), offsets.get("stream"));
+    }
+
+    /**
+     * Nothing is checkpointed until a message has been settled, and the watermark then
+     * stays below the first offset which is still in flight.
+     */
+    @Test
+    public void holdsBackBehindFirstDelivery() {
+
+        track(5, 6);
+
+        assertNull(offsets.get("stream"));
+
+        queue.commit(message(6));
+
+        assertEquals(Long.valueOf(4), offsets.get("stream"));
+    }
+
+    /**
+     * The consumers resume after the watermark, and offsets which were pending before are no longer tracked.
+     * @throws Exception if unable to get the consumer arguments
+     */
+    @Test
+    public void resumesAfterWatermark() throws Exception {
+
+        track(0, 1, 2);
+
+        queue.commit(message(0));
+
+        assertEquals(Long.valueOf(1), queue.getConsumerArguments().get("x-stream-offset"));
+
+        queue.commit(message(2));
+
+        assertEquals(Long.valueOf(0), offsets.get("stream"));
+    }
+
+    /**
+     * Track messages with the given offsets, in the order of delivery.
+     * @param offsets The offsets
+     */
+    private void track(
+        final long... offsets) {
+
+        for (long offset : offsets) {
+            queue.track(Arrays.asList(message(offset)));
+        }
+
+    }
+
+    /**
+     * Create message which has been delivered from a stream queue.
+     * @param offset The offset of the message
+     * @return The message
+     */
+    private Message message(
+        final long offset) {
+
+        MessageProperties messageProperties;
+
+        messageProperties = new MessageProperties();
+        messageProperties.setHeader("x-stream-offset", offset);
+
+        return new Message(new byte[0], messageProperties);
+    }
+
+}
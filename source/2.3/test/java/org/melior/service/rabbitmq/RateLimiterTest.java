@@ -0,0 +1,103 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the token buckets of a {@code RateLimiter}.
+ * @author Melior
+ * @since 2.3
+ */
+public class RateLimiterTest {
+
+    /**
+     * A rate limiter without limits never defers a message.
+     */
+    @Test
+    public void doesNotDeferWithoutLimits() {
+
+        RateLimiter rateLimiter = new RateLimiter(0, 0, 1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, rateLimiter.reserve(1_000_000));
+        }
+
+    }
+
+    /**
+     * Messages within the burst allowance are not deferred, and the next message is
+     * deferred for about the time it takes to earn a token.
+     */
+    @Test
+    public void defersBeyondBurstAllowance() {
+
+        RateLimiter rateLimiter = new RateLimiter(10, 0, 1);
+        long delay;
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, rateLimiter.reserve(100));
+        }
+
+        delay = rateLimiter.reserve(100);
+
+        assertTrue((delay > TimeUnit.MILLISECONDS.toNanos(50)) && (delay <= TimeUnit.MILLISECONDS.toNanos(100)), "delay " + delay);
+    }
+
+    /**
+     * Each message beyond the burst allowance goes further into debt.
+     */
+    @Test
+    public void accumulatesDebt() {
+
+        RateLimiter rateLimiter = new RateLimiter(10, 0, 0);
+        long first;
+        long second;
+
+        rateLimiter.reserve(100);
+
+        first = rateLimiter.reserve(100);
+        second = rateLimiter.reserve(100);
+
+        assertTrue(second > first, "first " + first + ", second " + second);
+    }
+
+    /**
+     * The byte limit defers a message which exceeds the byte allowance, even if the message limit allows it.
+     */
+    @Test
+    public void defersBeyondByteAllowance() {
+
+        RateLimiter rateLimiter = new RateLimiter(0, 1000, 1);
+        long delay;
+
+        assertEquals(0, rateLimiter.reserve(1000));
+
+        delay = rateLimiter.reserve(500);
+
+        assertTrue((delay > TimeUnit.MILLISECONDS.toNanos(400)) && (delay <= TimeUnit.MILLISECONDS.toNanos(500)), "delay " + delay);
+    }
+
+    /**
+     * A batch reserves the tokens for all its messages at once.
+     */
+    @Test
+    public void reservesWholeBatch() {
+
+        RateLimiter rateLimiter = new RateLimiter(10, 0, 1);
+        long delay;
+
+        delay = rateLimiter.reserve(20, 0);
+
+        assertTrue((delay > TimeUnit.MILLISECONDS.toNanos(900)) && (delay <= TimeUnit.SECONDS.toNanos(1)), "delay " + delay);
+    }
+
+}
@@ -0,0 +1,89 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.rabbitmq;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.backoff.BackOffExecution;
+
+/**
+ * Tests the intervals of a {@code RecoveryBackOff}.
+ * @author Melior
+ * @since 2.3
+ */
+public class RecoveryBackOffTest {
+
+    /**
+     * The interval doubles up to the maximum, and is jittered by up to half of its length.
+     */
+    @Test
+    public void doublesUpToMaximumWithJitter() {
+
+        BackOffExecution execution;
+        long interval;
+        long backOff;
+
+        for (int run = 0; run < 100; run++) {
+
+            execution = new RecoveryBackOff(100, 1000).start();
+            interval = 100;
+
+            for (int attempt = 0; attempt < 10; attempt++) {
+                backOff = execution.nextBackOff();
+
+                assertTrue((backOff >= interval - interval / 2) && (backOff <= interval), "attempt " + attempt + ", back-off " + backOff);
+
+                interval = Math.min(interval * 2, 1000);
+            }
+
+        }
+
+    }
+
+    /**
+     * Each execution starts again from the initial interval.
+     */
+    @Test
+    public void restartsFromInitialInterval() {
+
+        RecoveryBackOff backOff = new RecoveryBackOff(100, 1000);
+        BackOffExecution execution;
+
+        execution = backOff.start();
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            execution.nextBackOff();
+        }
+
+        assertTrue(backOff.start().nextBackOff() <= 100);
+    }
+
+    /**
+     * The initial interval is at least one millisecond, and the maximum interval is at least the initial interval.
+     */
+    @Test
+    public void clampsIntervals() {
+
+        BackOffExecution execution;
+
+        execution = new RecoveryBackOff(0, 0).start();
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            assertEquals(1, execution.nextBackOff());
+        }
+
+        execution = new RecoveryBackOff(500, 100).start();
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            assertTrue(execution.nextBackOff() >= 250);
+        }
+
+    }
+
+}